@@ -2,7 +2,7 @@ import java.util.*;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
 import java.io.*;
-import java.util.jar.*;
+import java.nio.file.Files;
 import staticAnalyzer.*;
 
 public class App {
@@ -21,50 +21,195 @@ public class App {
     
     public void run( String args[] ) throws IOException, ClassNotFoundException {
         Vector<String> class_names = new Vector<String>();
+        boolean worklist = false;
+        boolean slicing = true;
+        boolean trailing = false;
+        int threads = 1;
+        boolean bottom_up = false;
+        String profile = null;
+        String cache = null;
+        boolean watch = false;
+        String checkpoint = null;
+        long checkpoint_every = 60;
+        boolean resume = false;
+        int release = Runtime.version().feature();
+        long budget = 0;
+        PackageFilter filter = new PackageFilter();
+        Vector<String> inputs = new Vector<String>();
+        Analyzer a = new Analyzer();
+        WideningPolicy widening = a.getWidening();
 
-        // load classes and jar files in the repository
-        for( String s : args ) {
-            if( s.endsWith(".class") ) {
-                addClass(s,class_names);
-            } else if ( s.endsWith(".jar") ) {
-                addJar(s,class_names);
+        for( String s : expand(Arrays.asList(args)) ) {
+            if ( s.equals("--worklist") ) {
+                worklist = true;
+            } else if ( s.equals("--trail") ) {
+                trailing = true;
+            } else if ( s.startsWith("--threads=") ) {
+                threads = Integer.parseInt(s.substring("--threads=".length()));
+            } else if ( s.equals("--bottom-up") ) {
+                bottom_up = true;
+            } else if ( s.startsWith("--profile=") ) {
+                profile = s.substring("--profile=".length());
+            } else if ( s.equals("--watch") ) {
+                watch = true;
+            } else if ( s.startsWith("--checkpoint=") ) {
+                checkpoint = s.substring("--checkpoint=".length());
+            } else if ( s.startsWith("--checkpoint-every=") ) {
+                checkpoint_every = Long.parseLong(
+                        s.substring("--checkpoint-every=".length()));
+            } else if ( s.equals("--resume") ) {
+                resume = true;
+            } else if ( s.startsWith("--cache=") ) {
+                cache = s.substring("--cache=".length());
+            } else if ( s.equals("--no-slicing") ) {
+                slicing = false;
+            } else if ( s.startsWith("--widening=") ) {
+                widening.setKind(WideningPolicy.Kind.valueOf(
+                        s.substring("--widening=".length()).toUpperCase()));
+            } else if ( s.startsWith("--widen-after=") ) {
+                widening.setThreshold(Integer.parseInt(
+                        s.substring("--widen-after=".length())));
+            } else if ( s.startsWith("--max-iterations=") ) {
+                widening.setLimit(Integer.parseInt(
+                        s.substring("--max-iterations=".length())));
+            } else if ( s.startsWith("--class-budget=") ) {
+                budget = Long.parseLong(s.substring("--class-budget=".length())) << 10;
+                if ( budget <= 0 )
+                    throw new IllegalArgumentException("Class budget must be positive");
+            } else if ( s.startsWith("--include=") ) {
+                filter.include(s.substring("--include=".length()));
+            } else if ( s.startsWith("--exclude=") ) {
+                filter.exclude(s.substring("--exclude=".length()));
+            } else if ( s.startsWith("--release=") ) {
+                release = Integer.parseInt(s.substring("--release=".length()));
+            } else if( s.endsWith(".class") || s.endsWith(".jar")
+                       || s.endsWith(".jmod") || new File(s).isDirectory() ) {
+                inputs.add(s);
             } else if ( s.equals("-h") ) {
-                System.out.println("App [file.class] [file.jar]");
+                System.out.println("App [--worklist] [--trail] [--threads=N] [--bottom-up] [--profile=FILE] [--cache=DIR] [--watch] [--checkpoint=FILE] [--checkpoint-every=SECONDS] [--resume] [--no-slicing] [--widening=none|bounds|top]"
+                                   +" [--widen-after=K] [--max-iterations=N] [--release=N] [--class-budget=KB]"
+                                   +" [--include=PACKAGE] [--exclude=PACKAGE]"
+                                   +" [file.class] [file.jar] [file.jmod] [dir] [@argfile]");
                 return;
             } else {
                 throw new IllegalArgumentException("Uknown parameter "+s);
             }
         }
 
-        Analyzer a = new Analyzer();
-        // create an instance of the static analyzer
-        a.analyzeClasses(class_names);
+        if ( resume && checkpoint == null )
+            throw new IllegalArgumentException("--resume needs --checkpoint=FILE");
+        Repository.setBudget(budget);
+        try {
+            // load classes, jar files and directories in the repository
+            for( String s : inputs ) {
+                if ( s.endsWith(".class") ) {
+                    addClass(s,class_names);
+                } else if ( new File(s).isDirectory() ) {
+                    addSource(new PathSource(new File(s).toPath(),release),class_names,filter);
+                } else {
+                    JarSource jar = new JarSource(s,release);
+                    addSource(jar,class_names,filter);
+                    for( ClassSource nested : jar.getNested() )
+                        addSource(nested,class_names,filter);
+                }
+            }
+
+            a.setWorklist(worklist);
+            a.setSlicing(slicing);
+            a.setTrailing(trailing);
+            a.setThreads(threads);
+            a.setBottomUp(bottom_up);
+            if ( profile != null )
+                a.setProfile(profile);
+            if ( watch && cache == null ) {
+                // the results of a run for the next one
+                File dir = Files.createTempDirectory("analyzer").toFile();
+                deleteOnExit(dir);
+                cache = dir.getPath();
+            }
+            if ( cache != null )
+                a.setCache(cache);
+            if ( checkpoint != null )
+                a.setCheckpoint(checkpoint,checkpoint_every);
+            a.setResume(resume);
+            if ( watch ) {
+                Watcher w = new Watcher(a,filter);
+                for( String s : inputs ) {
+                    if ( new File(s).isDirectory() )
+                        w.watch(new File(s).toPath());
+                }
+                w.run(class_names);
+                return;
+            }
+            // create an instance of the static analyzer
+            a.analyzeClasses(class_names);
+        } finally {
+            // the jars stay open until the analysis, or the watch, ends
+            Repository.closeSources();
+        }
+    }
+
+    // deletes the files in dir, and dir, when the program ends
+    private static final void deleteOnExit( final File dir ) {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                File[] files = dir.listFiles();
+                if ( files != null ) {
+                    for( File f : files )
+                        f.delete();
+                }
+                dir.delete();
+            }
+        });
     }
 
     private static final void addClass( String file, Vector<String> v )
             throws IOException {
         FileInputStream fis = new FileInputStream(file);
-        ClassReader cr = new ClassReader(fis);
-        ClassNode cn = new ClassNode();
-        cr.accept(cn, 0);
-        Repository.addClass(cn);
-        v.add(cn.name);
-        fis.close();
+        try {
+            v.add(Repository.addClass(fis.readAllBytes()));
+        } finally {
+            fis.close();
+        }
     }
 
-    private static final void addJar( String jar, Vector<String> v ) 
+    // The classes are read from the source when looked up. Only the ones
+    // the filter accepts are analyzed: the others are read only if the
+    // analysis needs them, to walk the class tree.
+    private static final void addSource( ClassSource source, Vector<String> v
+                                       , PackageFilter filter ) {
+        Repository.addSource(source);
+        for( String name : source.getClassNames() ) {
+            if ( filter.accepts(name) )
+                v.add(name);
+        }
+    }
+
+    // Replaces every @file with the arguments in it, separated by blanks;
+    // lines starting with # are comments.
+    private static final List<String> expand( List<String> args )
             throws IOException {
-        JarInputStream js = new JarInputStream(new FileInputStream(jar));
-        JarEntry je;
-        while( (je = js.getNextJarEntry()) != null ) {
-            String name = je.getName();
-            if ( name.endsWith(".class") && ! je.isDirectory() ) {
-                ClassReader cr = new ClassReader(js);
-                ClassNode cn = new ClassNode();
-                cr.accept(cn, 0);
-                Repository.addClass(cn);
-                v.add(cn.name);
+        List<String> all = new ArrayList<String>();
+        for( String s : args ) {
+            if ( ! s.startsWith("@") ) {
+                all.add(s);
+                continue;
+            }
+            List<String> inner = new ArrayList<String>();
+            BufferedReader r = new BufferedReader(new FileReader(s.substring(1)));
+            try {
+                String line;
+                while( (line = r.readLine()) != null ) {
+                    line = line.trim();
+                    if ( line.isEmpty() || line.startsWith("#") )
+                        continue;
+                    inner.addAll(Arrays.asList(line.split("\\s+")));
+                }
+            } finally {
+                r.close();
             }
+            all.addAll(expand(inner));
         }
+        return all;
     }
 }
@@ -0,0 +1,174 @@
+package staticAnalyzer;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+// What is known about a Variable: its type, kind, domain value and bounds.
+// Values are immutable and hash-consed, so a Variable changes by pointing
+// to another value and two equal values are the same object.
+final class AbstractValue {
+    private final String type;
+    private final Variable.Kind kind;
+    private final Variable.DomainValue value;
+    private final BoundSet safe;
+    private final BoundSet edge;
+    private final int hash;
+
+    // values still referenced by some Variable, in stripes by hash so the
+    // threads seldom wait on the same lock
+    private static final int STRIPES = 64;
+    private static final List<Map<Object,WeakReference<AbstractValue>>> table =
+            new ArrayList<Map<Object,WeakReference<AbstractValue>>>(STRIPES);
+    static {
+        for( int i = 0; i < STRIPES; i++ ) {
+            table.add(new WeakHashMap<Object,WeakReference<AbstractValue>>());
+        }
+    }
+
+    // the fields looked up, a probe per thread: a value is allocated only
+    // if it is not in the table
+    private static final ThreadLocal<Probe> probes = new ThreadLocal<Probe>() {
+        protected Probe initialValue() {
+            return new Probe();
+        }
+    };
+
+    private AbstractValue( String type, Variable.Kind kind
+                         , Variable.DomainValue value
+                         , BoundSet safe, BoundSet edge ) {
+        this.type = type;
+        this.kind = kind;
+        this.value = value;
+        this.safe = safe;
+        this.edge = edge;
+        this.hash = hash(type,kind,value,safe,edge);
+    }
+
+    private static int hash( String type, Variable.Kind kind
+                           , Variable.DomainValue value
+                           , BoundSet safe, BoundSet edge ) {
+        // as Objects.hash, without the array
+        int h = 31 + Objects.hashCode(type);
+        h = 31 * h + Objects.hashCode(kind);
+        h = 31 * h + Objects.hashCode(value);
+        h = 31 * h + Objects.hashCode(safe);
+        return 31 * h + Objects.hashCode(edge);
+    }
+
+    // the interned value with these fields
+    public static AbstractValue of( String type, Variable.Kind kind
+                                  , Variable.DomainValue value
+                                  , BoundSet safe, BoundSet edge ) {
+        Probe p = probes.get();
+        p.set(type,kind,value,safe,edge);
+        Map<Object,WeakReference<AbstractValue>> stripe =
+                table.get((p.hash ^ (p.hash >>> 16)) & (STRIPES-1));
+        try {
+            synchronized( stripe ) {
+                WeakReference<AbstractValue> r = stripe.get(p);
+                AbstractValue i = r == null ? null : r.get();
+                if ( i != null )
+                    return i;
+                AbstractValue v = new AbstractValue(type,kind,value,safe,edge);
+                stripe.put(v,new WeakReference<AbstractValue>(v));
+                return v;
+            }
+        } finally {
+            p.clear();
+        }
+    }
+
+    // The fields of a value being looked up, equal to the value with the
+    // same ones: the table compares the key looked up to its own.
+    private static final class Probe {
+        private String type;
+        private Variable.Kind kind;
+        private Variable.DomainValue value;
+        private BoundSet safe;
+        private BoundSet edge;
+        private int hash;
+
+        void set( String type, Variable.Kind kind, Variable.DomainValue value
+                , BoundSet safe, BoundSet edge ) {
+            this.type = type;
+            this.kind = kind;
+            this.value = value;
+            this.safe = safe;
+            this.edge = edge;
+            this.hash = AbstractValue.hash(type,kind,value,safe,edge);
+        }
+
+        // not to keep the fields alive
+        void clear() {
+            type = null;
+            safe = null;
+            edge = null;
+        }
+
+        public boolean equals( Object o ) {
+            if ( ! (o instanceof AbstractValue) )
+                return false;
+            AbstractValue v = (AbstractValue)o;
+            return hash == v.hash && kind == v.kind && value == v.value
+                && type.equals(v.type)
+                && Objects.equals(safe,v.safe) && Objects.equals(edge,v.edge);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Variable.Kind getKind() {
+        return kind;
+    }
+
+    public Variable.DomainValue getValue() {
+        return value;
+    }
+
+    public BoundSet getSafe() {
+        return safe;
+    }
+
+    public BoundSet getEdge() {
+        return edge;
+    }
+
+    public AbstractValue withType( String type ) {
+        return type.equals(this.type) ? this : of(type,kind,value,safe,edge);
+    }
+
+    public AbstractValue withKind( Variable.Kind kind ) {
+        return kind == this.kind ? this : of(type,kind,value,safe,edge);
+    }
+
+    public AbstractValue withValue( Variable.DomainValue value ) {
+        return value == this.value ? this : of(type,kind,value,safe,edge);
+    }
+
+    public AbstractValue withBounds( BoundSet safe, BoundSet edge ) {
+        if ( safe == this.safe && edge == this.edge )
+            return this;
+        return of(type,kind,value,safe,edge);
+    }
+
+    public boolean equals( Object o ) {
+        if ( this == o )
+            return true;
+        if ( ! (o instanceof AbstractValue) )
+            return false;
+        AbstractValue v = (AbstractValue)o;
+        return hash == v.hash && kind == v.kind && value == v.value
+            && type.equals(v.type)
+            && Objects.equals(safe,v.safe) && Objects.equals(edge,v.edge);
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -15,26 +15,234 @@ class Analysis {
     private Hashtable<MethodSignature,Variable> method_result = 
                 new Hashtable<MethodSignature,Variable>();
 
+    // results of the calls by callee and arguments, never shared: they
+    // hold for the arguments of the callers of this thread only
+    private Hashtable<CallContext,Variable> call_results =
+                new Hashtable<CallContext,Variable>();
+
+    // use the WorklistEngine instead of analyzeInstructions
+    private boolean worklist = false;
+
+    // explore the false branches on the frame itself, with a Trail
+    private boolean trailing = false;
+
+    // skip the instructions outside the relevance slice
+    private boolean slicing = true;
+
+    // array access sites of the classes, null if not indexed
+    private SiteIndex sites = null;
+
+    // summaries shared with the other threads, null if none
+    private SummaryCache summaries = null;
+
+    // analysis time of the methods, null if not profiling
+    private CostProfile profile = null;
+
+    // how loop fixpoints join their iterations
+    private WideningPolicy widening = new WideningPolicy();
+
+    // transfer functions by opcode
+    private OpcodeHandler[] handlers = OpcodeHandler.table();
+
+    // compiled methods, dropped with their MethodNode
+    private Map<MethodNode,MethodTransfer> transfers =
+                new WeakHashMap<MethodNode,MethodTransfer>();
+
     public Analysis( Analyzer analyzer ) {
         this.analyzer = analyzer;
     }
 
+    // an Analysis with the same settings and no results, for another
+    // thread: the sites and the widening policy are shared
+    protected Analysis fork() {
+        Analysis a = new Analysis(analyzer);
+        a.worklist = worklist;
+        a.trailing = trailing;
+        a.slicing = slicing;
+        a.sites = sites;
+        a.summaries = summaries;
+        a.profile = profile;
+        a.widening = widening;
+        a.handlers = handlers.clone();
+        return a;
+    }
+
+    protected void setWorklist( boolean worklist ) {
+        this.worklist = worklist;
+    }
+
+    protected void setTrailing( boolean trailing ) {
+        this.trailing = trailing;
+    }
+
+    protected void setSlicing( boolean slicing ) {
+        this.slicing = slicing;
+    }
+
+    protected boolean isTrailing() {
+        return trailing;
+    }
+
+    protected boolean isSlicing() {
+        return slicing;
+    }
+
+    // the settings the results depend on, to tell them apart when saved
+    protected String getSettings() {
+        return (worklist ? "worklist" : "frames")
+               +(trailing ? " trail" : " copy")
+               +(slicing ? " slicing" : " all");
+    }
+
+    protected void setSites( SiteIndex sites ) {
+        this.sites = sites;
+    }
+
+    protected SiteIndex getSites() {
+        return sites;
+    }
+
+    protected void setSummaries( SummaryCache summaries ) {
+        this.summaries = summaries;
+    }
+
+    protected void setProfile( CostProfile profile ) {
+        this.profile = profile;
+    }
+
+    protected boolean isAnalyzable( String owner ) {
+        return analyzer.isAnalyzable(owner);
+    }
+
+    protected WideningPolicy getWidening() {
+        return widening;
+    }
+
     protected void analyzeMethods( ClassNode jclass ) {
         //System.out.println(jclass.methods.size()+" methods to check");
         for( MethodNode m : jclass.methods ) {
-            // skips method already analyzed
-            if ( method_result.get(new MethodSignature(m,jclass)) == null )
-                analyzeMethod(m,jclass);
+            analyzeMethodOnce(m,jclass);
         }
         //System.out.println(methods);
     }
 
+    // analyzes m of jclass, unless it is done already, by this or another
+    // thread, or it can't report anything
+    protected void analyzeMethodOnce( MethodNode m, ClassNode jclass ) {
+        // skips the methods that can't report anything, whether a caller
+        // analyzed them or not, so the count is the same with any threads
+        if ( sites != null && ! sites.needsAnalysis(jclass,m) ) {
+            sites.skip(jclass,m);
+            return;
+        }
+        // and the ones already analyzed
+        MethodSignature ms = new MethodSignature(m,jclass);
+        if ( method_result.get(ms) != null )
+            return;
+        if ( summaries == null ) {
+            analyzeMethod(m,jclass);
+            return;
+        }
+        // or that another thread analyzed
+        SummaryCache.Entry claim = summaries.claim(ms);
+        if ( claim == null )
+            return;
+        boolean done = false;
+        try {
+            analyzeMethod(m,jclass);
+            done = true;
+        } finally {
+            summaries.complete(ms,claim,done ? method_result.get(ms) : null);
+        }
+    }
+
+    // analysis of a method on its own, timed if profiling
     protected boolean analyzeMethod( MethodNode m, ClassNode j ) {
-        return analyzeMethod(m,j,null);
+        if ( profile == null )
+            return interpret(m,j);
+        long start = System.nanoTime();
+        boolean recursive = interpret(m,j);
+        profile.record(j,m,System.nanoTime()-start);
+        return recursive;
+    }
+
+    // Analyzes the methods of a component of the call graph, whose callees
+    // outside of it have their summaries already. In a recursive one the
+    // summaries start from BOTTOM and the methods are analyzed again until
+    // none of them changes.
+    protected void analyzeComponent( CallGraph.Component c ) {
+        List<CallGraph.Node> nodes = c.getNodes();
+        // nobody needs its summary, skip it like analyzeMethods
+        CallGraph.Node first = nodes.get(0);
+        if ( ! c.isRecursive() && c.getCallers().isEmpty() && sites != null
+                && ! sites.needsAnalysis(first.getOwner(),first.getMethod()) ) {
+            sites.skip(first.getOwner(),first.getMethod());
+            return;
+        }
+        MethodSignature[] ms = new MethodSignature[nodes.size()];
+        SummaryCache.Entry[] claims = new SummaryCache.Entry[nodes.size()];
+        for( int i = 0; i < ms.length; i++ ) {
+            CallGraph.Node n = nodes.get(i);
+            ms[i] = new MethodSignature(n.getMethod(),n.getOwner());
+            if ( summaries != null )
+                claims[i] = summaries.claim(ms[i]);
+        }
+        boolean done = false;
+        try {
+            if ( ! c.isRecursive() ) {
+                CallGraph.Node n = nodes.get(0);
+                if ( method_result.get(ms[0]) == null
+                        && (summaries == null || claims[0] != null) ) {
+                    analyzeMethod(n.getMethod(),n.getOwner());
+                }
+            } else {
+                for( int i = 0; i < ms.length; i++ ) {
+                    Type t = Type.getReturnType(nodes.get(i).getMethod().desc);
+                    method_result.put(ms[i],new Variable(t.getDescriptor()
+                                                 ,Variable.Kind.LOCAL
+                                                 ,Variable.DomainValue.BOTTOM
+                                                 ,Integer.MAX_VALUE,0));
+                }
+                int iteration = 0;
+                boolean changed;
+                do {
+                    iteration++;
+                    changed = false;
+                    for( int i = 0; i < ms.length; i++ ) {
+                        CallGraph.Node n = nodes.get(i);
+                        Variable ret = method_result.get(ms[i]);
+                        analyzeMethod(n.getMethod(),n.getOwner());
+                        if ( widening.join(ret,method_result.get(ms[i])
+                                          ,iteration) ) {
+                            changed = true;
+                        }
+                        method_result.put(ms[i],ret);
+                    }
+                } while( changed );
+            }
+            done = true;
+        } finally {
+            for( int i = 0; i < ms.length; i++ ) {
+                if ( claims[i] != null ) {
+                    summaries.complete(ms[i],claims[i]
+                                      ,done ? method_result.get(ms[i]) : null);
+                }
+            }
+        }
     }
 
-    protected boolean analyzeMethod( MethodNode m, ClassNode j,
-            Vector<Variable> parameters) {
+    // Interprets m with its parameters unknown: the summary is the same
+    // whoever calls it, so it can be shared and the result doesn't depend
+    // on which caller gets to a method first.
+    private boolean interpret( MethodNode m, ClassNode j ) {
+        return interpret(m,j,null,null);
+    }
+
+    // Interprets m for a call, with the arguments of the caller already in
+    // the slots of m. The result is kept by context, apart from the
+    // summary of m on its own.
+    private boolean interpret( MethodNode m, ClassNode j,
+            Vector<Variable> parameters, CallContext context ) {
         InsnList il = m.instructions;
         MethodSignature ms = new MethodSignature(m,j);
         boolean recursive = false;
@@ -71,37 +279,18 @@ class Analysis {
 
             State state = new State(m,j);
             
-            if ( parameters == null ) {
-                // setup start,state for the method call when in app analysis.
-                // no need of anything in library (default for now) analysis.
-                Type[] tys = Type.getArgumentTypes(m.desc);
-                int i = 0;
-                // If not static, 0 is 'this', arguments start at 1.
-                // But State constructor handles 'this' if not static.
-                // So here we add arguments.
-                // Wait, State constructor adds 'this' at 0.
-                // So we should append arguments.
-
-                // If not static, argument 0 is at local index 1?
-                // Actually State.variables is a vector. 'this' is added at 0.
-                // So subsequent args should be added.
-
-                for( Type ty : tys ) {
-                    state.getVariables().add(new Variable(ty.getDescriptor()
-                                            ,Variable.Kind.LOCAL
-                                            ,Variable.DomainValue.TOP
-                                            ,i,0));
-                    i++;
-                }
-            } else {
-                // there are some arguments for the function
-                for( Variable v : parameters ) {
-                    state.getVariables().add(v);
-                }
+            bindParameters(state,m,parameters);
+
+            Trail outer = null;
+            if ( trailing && ! worklist ) {
+                outer = Trail.install(new Trail());
+                state.setTrail(Trail.current());
             }
 
             // analyze method instructions
-            if (il.size() > 0) {
+            if (il.size() > 0 && worklist) {
+                ret = new WorklistEngine(this).analyze(m, j, state);
+            } else if (il.size() > 0) {
                 state = analyzeInstructions(m, il
                         , 0, il.size() - 1, state, j);
                 ret = state.getReturn();
@@ -112,13 +301,90 @@ class Analysis {
                                ,Variable.DomainValue.TOP
                                ,Integer.MAX_VALUE,0);
             }
+            if ( trailing && ! worklist ) {
+                Trail.install(outer);
+            }
         }
         // remove method from list of called methods in the stack
         methods.remove(ms);
-        method_result.put(ms,ret);
+        if ( context == null )
+            method_result.put(ms,ret);
+        else
+            call_results.put(context,ret);
         return recursive;
     }
 
+    // Places the arguments in their local slots, unknown if there are no
+    // parameters. If not static, 0 is 'this' (added by the State
+    // constructor) and arguments start at 1; long and double take two
+    // slots.
+    private void bindParameters( State state, MethodNode m,
+            Vector<Variable> parameters ) {
+        Type[] tys = Type.getArgumentTypes(m.desc);
+        int slot = (m.access & Opcodes.ACC_STATIC) != 0 ? 0 : 1;
+
+        if ( parameters == null ) {
+            for( Type ty : tys ) {
+                state.store(slot,new Variable(ty.getDescriptor()
+                                             ,Variable.Kind.LOCAL
+                                             ,Variable.DomainValue.TOP
+                                             ,slot,0));
+                slot += ty.getSize();
+            }
+            return;
+        }
+
+        for( Variable v : parameters ) {
+            state.store(v.getIndex(),v);
+        }
+    }
+
+    // Copies the arguments of a call into the slots of the callee: bounds
+    // refer to the caller's slots, they are moved to the slots of the
+    // parameters, or dropped if not on a parameter.
+    private static Vector<Variable> moveArguments( MethodNode m,
+            Vector<Variable> arguments ) {
+        Vector<Variable> parameters = Variable.copyAll(arguments);
+        Type[] tys = Type.getArgumentTypes(m.desc);
+        int slot = (m.access & Opcodes.ACC_STATIC) != 0 ? 0 : 1;
+
+        int[] slots = new int[parameters.size()];
+        int max = -1;
+        for( int i = 0; i < parameters.size(); i++ ) {
+            slots[i] = slot;
+            slot += i < tys.length ? tys[i].getSize() : 1;
+            int index = parameters.get(i).getIndex();
+            if ( index != Integer.MAX_VALUE && index > max )
+                max = index;
+        }
+        int[] map = new int[max+1];
+        Arrays.fill(map,-1);
+        for( int i = 0; i < parameters.size(); i++ ) {
+            int index = parameters.get(i).getIndex();
+            if ( index >= 0 && index <= max )
+                map[index] = slots[i];
+        }
+        Set<Variable> moved = Collections.newSetFromMap(
+                new IdentityHashMap<Variable,Boolean>());
+        for( int i = 0; i < parameters.size(); i++ ) {
+            Variable v = parameters.get(i);
+            if ( moved.add(v) ) {
+                v.remapBounds(map);
+            }
+            v.setIndex(slots[i]);
+        }
+        return parameters;
+    }
+
+    protected MethodTransfer getTransfer( MethodNode m ) {
+        MethodTransfer t = transfers.get(m);
+        if ( t == null ) {
+            t = new MethodTransfer(this,m);
+            transfers.put(m,t);
+        }
+        return t;
+    }
+
     // Helper to find instruction index
     private int getIndex(InsnList il, AbstractInsnNode node) {
         return il.indexOf(node);
@@ -138,6 +404,7 @@ class Analysis {
 
         AbstractInsnNode node = il.get(start_pc);
         int pci = start_pc;
+        MethodTransfer transfer = getTransfer(m);
 
         while(true) {
             if (node == null || pci > end_pc) {
@@ -148,481 +415,63 @@ class Analysis {
             System.out.println(pci);
 
             int opcode = node.getOpcode();
-            int type = node.getType();
-
-            if (opcode == -1) {
-                // Pseudo instruction (Label, LineNumber, Frame)
-                if (node instanceof LineNumberNode) {
-                    // ignore
-                } else if (node instanceof LabelNode) {
-                    // ignore
-                } else if (node instanceof FrameNode) {
-                    // ignore
-                }
-            } else if ( opcode == Opcodes.FCMPG || opcode == Opcodes.FCMPL ) {
-                Variable v1,v2;
-                v1 = s.stackPop();
-                v2 = s.stackPop();
-                assert v1.getType().equals("F");
-                assert v2.getType().equals("F");
-                s.stackPush(new Variable("I",Variable.Kind.CONST,
-                            Variable.DomainValue.TOP,Integer.MAX_VALUE,pci));
-            } else if ( opcode == Opcodes.DCMPL || opcode == Opcodes.DCMPG ) {
-                Variable v1,v2;
-                v1 = s.stackPop();
-                v2 = s.stackPop();
-                assert v1.getType().equals("D");
-                assert v2.getType().equals("D");
-                s.stackPush(new Variable("I",Variable.Kind.CONST,
-                                Variable.DomainValue.TOP,Integer.MAX_VALUE,pci));
-            } else if ( (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5)
-                     || (opcode >= Opcodes.LCONST_0 && opcode <= Opcodes.LCONST_1)
-                     || (opcode >= Opcodes.FCONST_0 && opcode <= Opcodes.FCONST_2)
-                     || (opcode >= Opcodes.DCONST_0 && opcode <= Opcodes.DCONST_1)
-                     || opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH ) {
-                 // Constant push instructions
-                 // BIPUSH and SIPUSH are IntInsnNode
-                 // Consts are InsnNode
-                 int val = 0;
-                 String sig = "I";
-                 if (opcode == Opcodes.ICONST_M1) val = -1;
-                 else if (opcode == Opcodes.ICONST_0) val = 0;
-                 else if (opcode == Opcodes.ICONST_1) val = 1;
-                 else if (opcode == Opcodes.ICONST_2) val = 2;
-                 else if (opcode == Opcodes.ICONST_3) val = 3;
-                 else if (opcode == Opcodes.ICONST_4) val = 4;
-                 else if (opcode == Opcodes.ICONST_5) val = 5;
-                 else if (opcode == Opcodes.LCONST_0) { val = 0; sig = "J"; }
-                 else if (opcode == Opcodes.LCONST_1) { val = 1; sig = "J"; }
-                 else if (opcode == Opcodes.FCONST_0) { val = 0; sig = "F"; }
-                 else if (opcode == Opcodes.FCONST_1) { val = 1; sig = "F"; }
-                 else if (opcode == Opcodes.FCONST_2) { val = 2; sig = "F"; }
-                 else if (opcode == Opcodes.DCONST_0) { val = 0; sig = "D"; }
-                 else if (opcode == Opcodes.DCONST_1) { val = 1; sig = "D"; }
-                 else if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
-                     val = ((IntInsnNode)node).operand;
-                 }
-
-                Variable.DomainValue f;
-                if ( val > 0 ) {
-                    f = Variable.DomainValue.G0;
-                } else if ( val >= 0 ) {
-                    f = Variable.DomainValue.GEQ0;
-                } else {
-                    f = Variable.DomainValue.TOP;
-                }
-                Variable v = new Variable(sig,Variable.Kind.CONST
-                                         ,f,Integer.MAX_VALUE
-                                         ,pci);
-                s.stackPush(v);
-
-            } else if ( opcode == Opcodes.ACONST_NULL ) {
-                s.stackPush(new Variable("Ljava/lang/Object;",Variable.Kind.CONST
-                                         ,Variable.DomainValue.TOP
-                                         ,Integer.MAX_VALUE,pci));
-            } else if ( (opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD)
-                     || (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE)
-                     || opcode == Opcodes.IINC ) {
-                // Local Variable instructions
-                // ILOAD, LLOAD, FLOAD, DLOAD, ALOAD = 21..25
-                // ISTORE..ASTORE = 54..58
-                // IINC = 132
-
-                int var = -1;
-                if (node instanceof VarInsnNode) {
-                    var = ((VarInsnNode)node).var;
-                } else if (node instanceof IincInsnNode) {
-                    var = ((IincInsnNode)node).var;
-                }
-
-                if (opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD) {
-                    s.stackPush(s.load(var));
-                } else if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE) {
-                    Variable v = s.stackPop();
-                    v.setIndex(var);
-                    // Next instruction pos
-                    v.setStartPC(pci + 1);
-                    v.setKind(Variable.Kind.LOCAL);
-                    s.store(var,v);
-                } else if (opcode == Opcodes.IINC) {
-                    IincInsnNode iinc = (IincInsnNode)node;
-                    Variable v = s.load(iinc.var);
-                    v.iinc(iinc.incr);
-                }
 
-            } else if ( opcode == Opcodes.DUP ) {
-                    Variable top = s.stackPeek();
-                    assert top.getCategory() == 1;
-                    s.stackPush(top);
-            } else if ( opcode == Opcodes.DUP_X1 ) {
-                    Variable top_0 = s.stackPop();
-                    Variable top_1 = s.stackPop();
-                    assert top_0.getCategory() == 1;
-                    assert top_1.getCategory() == 1;
-                    s.stackPush(top_0);
-                    s.stackPush(top_1);
-                    s.stackPush(top_0);
-            } else if ( opcode == Opcodes.DUP_X2 ) {
-                    Variable top_0 = s.stackPop();
-                    Variable top_1 = s.stackPop();
-                    Variable top_2 = null;
-                    if ( top_0.getCategory() == 1 && top_1.getCategory() == 2 ) {
-                        s.stackPush(top_0);
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                    } else {
-                        top_2 = s.stackPop();
-                        assert top_0.getCategory() == 1;
-                        assert top_1.getCategory() == 1;
-                        assert top_2.getCategory() == 1;
-                        s.stackPush(top_0);
-                        s.stackPush(top_2);
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                    }
-            } else if ( opcode == Opcodes.DUP2 ) {
-                    Variable top = s.stackPeek();
-                    if ( top.getCategory() == 2) {
-                        s.stackPush(top);
-                    } else {
-                        Variable top_0 = s.stackPop();
-                        Variable top_1 = s.stackPop();
-                        
-                        assert top_0.getCategory() == 1;
-                        assert top_1.getCategory() == 1;
-
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                    }
-            } else if ( opcode == Opcodes.DUP2_X1 ) {
-                    Variable top_0 = s.stackPop();
-                    Variable top_1 = s.stackPop();
-                    Variable top_2 = null;
-                    if ( top_0.getCategory() == 2 && top_1.getCategory() == 1 ) {
-                        s.stackPush(top_0);
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                    } else {
-                        top_2 = s.stackPop();
-                        assert top_0.getCategory() == 1;
-                        assert top_1.getCategory() == 1;
-                        assert top_2.getCategory() == 1;
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                        s.stackPush(top_2);
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                    }
-            } else if ( opcode == Opcodes.DUP2_X2 ) {
-                    Variable top_0 = s.stackPop();
-                    Variable top_1 = s.stackPop();
-                    Variable top_2 = null;
-                    Variable top_3 = null;
-                    if ( top_0.getCategory() == 2 && top_1.getCategory() == 2 ) {
-                        s.stackPush(top_0); // form 4
-                        s.stackPush(top_1);
-                        s.stackPush(top_0);
-                    } else {
-                        top_2 = s.stackPop();
-                        if ( top_0.getCategory() == 1 && top_1.getCategory() == 1
-                             && top_2.getCategory() == 2 ) {
-                            s.stackPush(top_1); // form 3
-                            s.stackPush(top_0);
-                            s.stackPush(top_2);
-                            s.stackPush(top_1);
-                            s.stackPush(top_0);
-                        } else if ( top_0.getCategory() == 2 
-                                 && top_1.getCategory() == 1
-                                 && top_2.getCategory() == 1 ) { // form 2
-                            s.stackPush(top_0); 
-                            s.stackPush(top_2);
-                            s.stackPush(top_1);
-                            s.stackPush(top_0);
-                        } else { // form 1
-                            top_3 = s.stackPop();
-                            assert top_0.getCategory() == 1;
-                            assert top_1.getCategory() == 1;
-                            assert top_2.getCategory() == 1;
-                            assert top_3.getCategory() == 1;
-                            s.stackPush(top_1);
-                            s.stackPush(top_0);
-                            s.stackPush(top_3);
-                            s.stackPush(top_2);
-                            s.stackPush(top_1);
-                            s.stackPush(top_0);
-                        }
-                    }
-            } else if ( opcode == Opcodes.POP ) {
-                    Variable top = s.stackPop();
-                    assert top.getCategory() == 1;
-            } else if ( opcode == Opcodes.POP2 ) {
-                    Variable top = s.stackPop();
-                    if ( top.getCategory() == 1 ) {
-                        Variable top_1 = s.stackPop();
-                        assert top_1.getCategory() == 1;
-                    }
-            } else if ( opcode == Opcodes.SWAP ) {
-                    Variable a = s.stackPop();
-                    Variable b = s.stackPop();
-
-                    assert a.getCategory() == 1;
-                    assert b.getCategory() == 1;
-
-                    s.stackPush(a);
-                    s.stackPush(b);
-            } else if ( (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD)
-                     || (opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE) ) {
-                // Array instructions
-                Variable value = null;
-                boolean isStore = (opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE);
-
-                if ( isStore ) { // store command
-                    // eliminate value from stack.
-                    value = s.stackPop();
-                }
-                Variable index    = s.stackPop(); // index variable
-                Variable arrayref = s.stackPop(); // array reference
-
-                // check if the index is safe
-                if ( ! index.isSafe(arrayref) ) {
-                    // load is not safe, add report.
-                    makeNewReport(m,j,pci);
-                    // mark index as safe for arrayref.
-                    index.addSafe(arrayref);
-                }
-                if ( !isStore ) {
-                    s.stackPush(s.load(arrayref,index));
-                } else {
-                    s.store(arrayref,index,value);
-                }
-            } else if ( (opcode >= Opcodes.IADD && opcode <= Opcodes.LXOR) ) {
-                // Arithmetic Instructions
-                // IADD..LXOR
-                Variable v1,v2,v;
-                v1 = v2 = s.stackPop(); // first value on the stack
-
-                if( opcode == Opcodes.DADD || opcode == Opcodes.FADD
-                 || opcode == Opcodes.IADD || opcode == Opcodes.LADD ) {
-                    v1 = s.stackPop();
-                    v = v1.add(v2);
-                } else if ( opcode == Opcodes.DDIV || opcode == Opcodes.FDIV
-                         || opcode == Opcodes.IDIV || opcode == Opcodes.LDIV ) {
-                    v1 = s.stackPop();
-                    v = v1.div(v2);
-                } else if ( opcode == Opcodes.DMUL || opcode == Opcodes.FMUL
-                         || opcode == Opcodes.IMUL || opcode == Opcodes.LMUL ) {
-                    v1 = s.stackPop();
-                    v = v1.mul(v2);
-                } else if ( opcode == Opcodes.DNEG || opcode == Opcodes.FNEG
-                         || opcode == Opcodes.INEG || opcode == Opcodes.LNEG ) {
-                    v = v2.neg();
-                } else if ( opcode == Opcodes.DREM || opcode == Opcodes.FREM
-                         || opcode == Opcodes.IREM || opcode == Opcodes.LREM ) {
-                    v1 = s.stackPop();
-                    v = v1.rem(v2);
-                } else if ( opcode == Opcodes.DSUB || opcode == Opcodes.FSUB
-                         || opcode == Opcodes.ISUB || opcode == Opcodes.LSUB ) {
-                    v1 = s.stackPop();
-                    v = v1.sub(v2);
-                } else if ( opcode == Opcodes.IAND || opcode == Opcodes.LAND ) {
-                    v1 = s.stackPop();
-                    v = v1.and(v2);
-                } else if ( opcode == Opcodes.ISHL || opcode == Opcodes.LSHL ) {
-                    v1 = s.stackPop();
-                    v = v1.shl(v2);
-                } else if ( opcode == Opcodes.ISHR || opcode == Opcodes.LSHR ) {
-                    v1 = s.stackPop();
-                    v = v1.shr(v2);
-                } else if ( opcode == Opcodes.IUSHR || opcode == Opcodes.LUSHR ) {
-                    v1 = s.stackPop();
-                    v = v1.ushr(v2);
-                } else if ( opcode == Opcodes.IOR || opcode == Opcodes.LOR ) {
-                    v1 = s.stackPop();
-                    v = v1.or(v2);
-                } else if (opcode == Opcodes.IXOR || opcode == Opcodes.LXOR) {
-                    v1 = s.stackPop();
-                    v = v1.xor(v2);
-                } else {
-                    throw new RuntimeException(
-                            "Unknown arithmetic bytecode "+opcode);
-                }
-                v.setStartPC(pci);
-                s.stackPush(v);
-            } else if ( (opcode >= Opcodes.IFEQ && opcode <= Opcodes.IF_ACMPNE) || opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL ) {
+            if ( (opcode >= Opcodes.IFEQ && opcode <= Opcodes.IF_ACMPNE) || opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL ) {
                 // Branch Instructions
                 // IFEQ..IF_ACMPNE, IFNULL, IFNONNULL
 
                 if (node instanceof JumpInsnNode) {
-                    Variable v1,v2;
-
-                    State false_branch = s.clone();
-                    State true_branch  = s;
-                    
                     JumpInsnNode ifi = (JumpInsnNode)node;
                     LabelNode true_target = ifi.label;
                     int true_target_idx = getIndex(il, true_target);
                     int next_pc_idx = pci + 1; // Assuming next instruction
 
-                    if( opcode == Opcodes.IF_ICMPEQ ) {
-                        { // true v1 == v2
-                            v2 = true_branch.stackPop();
-                            v1 = true_branch.stackPop();
-                            v2.cmpeq(v1);
-                        }
-                        { // false v1 ≠ v2
-                            v2 = false_branch.stackPop();
-                            v1 = false_branch.stackPop();
-                        }
-                    } else if ( opcode == Opcodes.IF_ICMPNE ) {
-                        { // true v1 ≠ v2
-                            true_branch.stackPop();
-                            true_branch.stackPop();
-                        }
-                        { // false v1 = v2
-                            v2 = false_branch.stackPop();
-                            v1 = false_branch.stackPop();
-                            v2.cmpeq(v1);
-                        }
-                    } else if ( opcode == Opcodes.IF_ICMPGE ) {
-                        { // true v1 >= v2
-                            v2 = true_branch.stackPop();
-                            v1 = true_branch.stackPop();
-                            v1.cmpge(v2); // v1 >= v2
-                            v2.cmple(v1); // v2 <= v1
-                        }
-                        { // false v1 < v2
-                            v2 = false_branch.stackPop();
-                            v1 = false_branch.stackPop();
-                            v1.cmplt(v2); // v1 <  v2
-                            v2.cmpge(v1); // v2 >= v1
-                        }
-                    } else if ( opcode == Opcodes.IF_ICMPGT ) {
-                        { // true v1 > v2
-                            v2 = true_branch.stackPop();
-                            v1 = true_branch.stackPop();
-                            v1.cmpgt(v2); // v1 >  v2
-                            v2.cmple(v1); // v2 <= v1
-                        }
-                        { // false v1 <= v2
-                            v2 = false_branch.stackPop();
-                            v1 = false_branch.stackPop();
-                            v1.cmple(v2); // v1 <= v2
-                            v2.cmpge(v1); // v2 >= v1
-                        }
-                    } else if ( opcode == Opcodes.IF_ICMPLE ) {
-                        { // true v1 <= v2
-                            v2 = true_branch.stackPop();
-                            v1 = true_branch.stackPop();
-                            v1.cmple(v2); // v1 <= v2
-                            v2.cmpge(v1); // v2 >= v1
-                        }
-                        { // false v1 > v2
-                            v2 = false_branch.stackPop();
-                            v1 = false_branch.stackPop();
-                            v1.cmpgt(v2); // v1 >  v2
-                            v2.cmple(v1); // v2 <= v1
-                        }
-                    }  else if ( opcode == Opcodes.IF_ICMPLT ) {
-                        { // true v1 < v2
-                            v2 = true_branch.stackPop();
-                            v1 = true_branch.stackPop();
-                            v1.cmplt(v2); // v1 <  v2
-                            v2.cmpge(v1); // v2 >= v1
-                        }
-                        { // false v1 >= v2
-                            v2 = false_branch.stackPop();
-                            v1 = false_branch.stackPop();
-                            v1.cmpge(v2); // v1 >= v2
-                            v2.cmple(v1); // v2 <= v1
-                        }
-                    } else if ( opcode == Opcodes.IFLT ) {
-                        { // true < 0
-                            v1 = true_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.TOP);
-                        }
-                        { // false >= 0
-                            v1 = false_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.GEQ0);
-                        }
-                    } else if ( opcode == Opcodes.IFEQ ) {
-                        { // true =0
-                            v1 = true_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.GEQ0);
-                        }
-                        { // false ≠0
-                            v1 = false_branch.stackPop();
-                        }
-                    } else if ( opcode == Opcodes.IFGE ) {
-                        { // true >=0
-                            v1 = true_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.GEQ0);
-                        }
-                        { // false <0
-                            v1 = false_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.TOP);
-                        }
-                    } else if ( opcode == Opcodes.IFGT ) {
-                        { // true >0
-                            v1 = true_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.G0);
-                        }
-                        { // false <=0 
-                            v1 = false_branch.stackPop();
-                            if( v1.getDomainValue() != Variable.DomainValue.GEQ0 ) {
-                                v1.setDomainValue(Variable.DomainValue.TOP);
-                            }
-                        }
-                    } else if ( opcode == Opcodes.IFLE ) {
-                        { // true <=0
-                            v1 = true_branch.stackPop();
-                            if( v1.getDomainValue() != Variable.DomainValue.GEQ0 ) {
-                                v1.setDomainValue(Variable.DomainValue.TOP);
-                            }
-                        }
-                        { // false >0 
-                            v1 = false_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.G0);
-                        }
-                    } else if ( opcode == Opcodes.IFNE ) {
-                        { // true ≠0
-                            v1 = true_branch.stackPop();
-                        }
-                        { // false =0 
-                            v1 = false_branch.stackPop();
-                            v1.setDomainValue(Variable.DomainValue.GEQ0);
-                        }
-                    } else if ( opcode == Opcodes.IFNULL
-                             || opcode == Opcodes.IFNONNULL ) {
-                        { // true
-                            v1 = true_branch.stackPop();
-                        }
-                        { // false
-                            v1 = false_branch.stackPop();
-                        }
-                    } else if ( opcode == Opcodes.IF_ACMPEQ
-                             || opcode == Opcodes.IF_ACMPNE ) {
-                        { // true
-                            v2 = true_branch.stackPop();
-                            v1 = true_branch.stackPop();
-                        }
-                        { // false
-                            v2 = false_branch.stackPop();
-                            v1 = false_branch.stackPop();
-                        }
+                    State true_branch  = s;
+                    State false_branch = null;
+                    // with a trail the false branch is explored on s and
+                    // rolled back, only what it changed is kept
+                    Trail trail = s.getTrail();
+                    Trail.Delta explored = null;
+                    int mark = 0;
+
+                    if ( trail == null ) {
+                        false_branch = s.clone();
+                        branch(opcode,true_branch,false_branch);
+
+                        // analyzeInstructions uses indices.
+                        analyzeInstructions(m,il, next_pc_idx
+                               ,min(true_target_idx - 1,end_pc)
+                               ,false_branch,j);
                     } else {
-                        throw new RuntimeException("Unknown if bytecode");
-                    }
-
-                    // analyzeInstructions uses indices.
+                        mark = trail.mark();
+                        int pc = s.getPC();
+                        int goto_pc = s.getJump();
+                        Variable result = s.getReturn();
+
+                        s.setJump(-1); // as in a copy
+                        refine(opcode,s,false);
+                        analyzeInstructions(m,il, next_pc_idx
+                               ,min(true_target_idx - 1,end_pc)
+                               ,s,j);
+                        if ( isIterated(s) ) {
+                            // the false branch loops, it needs its own frame
+                            false_branch = s.clone();
+                            false_branch.setJump(s.getJump());
+                        } else {
+                            explored = trail.capture(mark,s);
+                        }
+                        trail.undo(mark);
+                        s.setPC(pc);
+                        s.setJump(goto_pc);
+                        s.setReturn(result);
 
-                    analyzeInstructions(m,il, next_pc_idx
-                           ,min(true_target_idx - 1,end_pc)
-                           ,false_branch,j);
+                        mark = trail.mark();
+                        refine(opcode,s,true);
+                    }
 
                     // there is a then only if the else finished with a goto.
-                    int jump = false_branch.getJump();
+                    int jump = false_branch != null ? false_branch.getJump()
+                                                    : explored.getJump();
                     if( jump >= pci ) { // there has been a goto!
                         // In BCEL code: pc = il.findHandle(false_branch.getPC()).getNext();
                         // This seems to skip instructions?
@@ -635,28 +484,34 @@ class Analysis {
                         jump = true_branch.getJump();
                         if ( jump < pci && jump >= 0 ) {
                             State loop;
+                            int iteration = 0;
                             do { // loop
                                 loop = true_branch.clone();
                                 analyzeInstructions(m,il,jump
                                        ,min(true_branch.getPC()-1,end_pc),loop,j);
-                            } while(true_branch.intersect(loop));
+                            } while(widening.join(true_branch,loop,++iteration));
                         }
                     } 
                     
-                    // false branch loop
-                    if ( jump < pci && jump >= 0 ) {
+                    // false branch loop, an explored one can't iterate
+                    if ( jump < pci && jump >= 0 && false_branch != null ) {
                         State loop;
+                        int iteration = 0;
                         do { // loop
                             // System.out.println("loop!");
                             loop = false_branch.clone();
                             analyzeInstructions(m,il,false_branch.getJump(),
                                 min(false_branch.getPC()-1,end_pc),loop,j);
-                        } while(false_branch.intersect(loop));
+                        } while(widening.join(false_branch,loop,++iteration));
                     }
 
                     System.out.println("pre-intersect "+pci
                             +" max is "+end_pc);
-                    true_branch.intersect(false_branch);
+                    if ( false_branch != null ) {
+                        true_branch.intersect(false_branch);
+                    } else {
+                        true_branch.intersect(explored,trail.base(mark,s));
+                    }
 
                     // In the original, it does 'pc = il.findHandle(true_branch.getPC()).getNext()'
                     // But here we are in a loop iterating instructions.
@@ -690,288 +545,498 @@ class Analysis {
             } else if ( opcode == Opcodes.GOTO ) {
                 JumpInsnNode ig = (JumpInsnNode)node;
                 s.setJump(getIndex(il, ig.label));
-            } else if ( (opcode >= Opcodes.I2L && opcode <= Opcodes.I2S) ) {
-                // Conversion
-                 Variable v = s.stackPop().clone();
-                if ( opcode == Opcodes.D2F ) {
-                    assert v.getType().equals("D");
-                    v.setType("F");
-                } else if ( opcode == Opcodes.D2L ) {
-                    assert v.getType().equals("D");
-                    v.setType("J");
-                } else if ( opcode == Opcodes.D2I ) {
-                    assert v.getType().equals("D");
-                    v.setType("I");
-                } else if ( opcode == Opcodes.F2D ) {
-                    assert v.getType().equals("F");
-                    v.setType("D");
-                } else if ( opcode == Opcodes.F2L ) {
-                    assert v.getType().equals("F");
-                    v.setType("J");
-                } else if ( opcode == Opcodes.F2I ) {
-                    assert v.getType().equals("F");
-                    v.setType("I");
-                } else if ( opcode == Opcodes.I2B
-                         || opcode == Opcodes.I2C || opcode == Opcodes.I2S ) {
-                    // ignored
-                } else if ( opcode == Opcodes.I2D ) {
-                    assert v.getType().equals("I");
-                    v.setType("D");
-                } else if ( opcode == Opcodes.I2L ) {
-                    assert v.getType().equals("I");
-                    v.setType("J");
-                } else if ( opcode == Opcodes.I2F ) {
-                    assert v.getType().equals("I");
-                    v.setType("F");
-                } else if ( opcode == Opcodes.L2D ) {
-                    assert v.getType().equals("J");
-                    v.setType("D");
-                } else if ( opcode == Opcodes.L2I ) {
-                    assert v.getType().equals("J");
-                    v.setType("I");
-                } else if ( opcode == Opcodes.L2F ) {
-                    assert v.getType().equals("J");
-                    v.setType("F");
+            } else if ( opcode == Opcodes.ATHROW ) {
+                Variable ex = s.stackPop();
+                int handler = findHandler(m, il, pci, ex);
+                if (handler >= 0) {
+                    s.clearStack();
+                    s.stackPush(ex);
+                    return analyzeInstructions(m, il, handler, il.size() - 1, s, j);
                 }
-                s.stackPush(v);
-            } else if ( opcode == Opcodes.INSTANCEOF || opcode == Opcodes.CHECKCAST ) {
-                    s.stackPop(); //@TODO atm ignoring types
-                    s.stackPush(new Variable("V"
+                return s;
+            } else if ( opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN ) {
+                // Return
+                if ( s.stackSize() > 0 ) {
+                    s.setReturn(s.stackPop());
+                } else {
+                    s.setReturn(new Variable("V"
                                 ,Variable.Kind.LOCAL
                                 ,Variable.DomainValue.TOP
                                 ,Integer.MAX_VALUE,pci));
-            } else if ( opcode >= Opcodes.INVOKEVIRTUAL && opcode <= Opcodes.INVOKEINTERFACE ) {
-                    // Invoke
-                    MethodInsnNode ii = (MethodInsnNode)node;
-                    String owner = ii.owner;
-                    String name = ii.name;
-                    String desc = ii.desc;
-                    
-                    // Check analyzable
-                    if ( ! analyzer.isAnalyzable(owner) ) {
-                        // skip instruction, un-analizable method. just clean
-                        // the stack from the arguments.
-                        Type[] args = Type.getArgumentTypes(desc);
-                        for( Type ty : args )
-                            s.stackPop();
-
-                        // pop the object reference if needed
-                        if ( opcode != Opcodes.INVOKESTATIC )
-                            s.stackPop();
-
-                        Type retType = Type.getReturnType(desc);
-                        if ( retType.getSort() != Type.VOID ) {
-                             s.stackPush(new Variable(retType.getDescriptor()
-                                         ,Variable.Kind.LOCAL
-                                         ,Variable.DomainValue.TOP
-                                         ,Integer.MAX_VALUE,pci));
-                        }
-                    } else { // the method is in the classes to analyze
-                        System.out.println("Analyze call to "+name);
+                }
+                return s;
+            } else {
+                MethodTransfer.Step step = transfer.getStep(pci);
+                if (step != null) step.apply(this, m, j, s);
+            }
 
-                        Vector<Variable> arguments = new Vector<Variable>();
-                        Type[] args = Type.getArgumentTypes(desc);
-                        for( Type argument : args ) {
-                            arguments.add(0, s.stackPop());
-                        }
+            // load next bytecode
+            node = node.getNext();
+            pci = getIndex(il, node);
+        }
+    }
 
-                        // search method going up in the class tree
-                        try { 
-                            boolean found = false;
-                            ClassNode cl = Repository.lookupClass(owner);
-                            MethodNode method = null;
-                            do {
-                                //System.out.println("method is in " + cl.getClassName()+"?");
-                                List<MethodNode> ms = cl.methods;
-                                for( MethodNode clmethod : ms ) {
-                                    if ( clmethod.name.equals(name) &&
-                                            clmethod.desc.equals(desc) ) {
-                                        if ( (clmethod.access & Opcodes.ACC_ABSTRACT) != 0 ) {
-                                            found = false; // found, but keep going
-                                            break;
-                                        } else { // may be native
-                                            method = clmethod;
-                                            found = true; // found, stop it
-                                            break;
-                                        }
-                                    }
-                                }
-                                if ( !found ) {
-                                    if (cl.superName != null)
-                                         cl = Repository.lookupClass(cl.superName);
-                                    else
-                                         cl = null;
-                                }
-                            } while( ! found && cl != null );
-                            if( ! found && cl == null ) {
-                                throw new RuntimeException("Can't find method "+name);
-                            }
+    // True if the loop of the false branch, that ended in f, would go
+    // through some instruction (or change f anyway, at the iteration
+    // limit), so that f can't be rolled back.
+    private boolean isIterated( State f ) {
+        return (f.getJump() >= 0 && f.getJump() <= f.getPC())
+            || widening.getLimit() <= 1;
+    }
 
-                            // Re-assign cl to the class where method was found?
-                            // No, analyzeMethod takes (MethodNode, ClassNode).
-                            // If found, cl is the class node.
-
-                            MethodSignature ms = new MethodSignature(method,cl);
-                            if( method_result.get(ms) == null ) {
-                                Vector<Variable> parameters = SerialClone.clone(arguments);
-                                boolean recursive = analyzeMethod(method,cl,parameters);
-                                if( recursive ) {
-                                    assert method_result.get(ms).getDomainValue() == Variable.DomainValue.TOP;
-                                    parameters = SerialClone.clone(arguments);
-                                    analyzeMethod(method,cl,parameters);
-                                    Variable ret = method_result.get(ms);
-                                    while( ret.intersect(method_result.get(ms),s) ) {
-                                        parameters = SerialClone.clone(arguments);
-                                        analyzeMethod(method,cl,parameters);
-                                    }
-                                    method_result.remove(ms);
-                                    method_result.put(ms,ret);
-                                }
-                            }
+    // handler of the opcode, null if it is ignored
+    protected OpcodeHandler getHandler( int opcode ) {
+        return handlers[opcode];
+    }
 
-                            if ( opcode != Opcodes.INVOKESTATIC )
-                                s.stackPop();
+    // replaces the transfer function of an opcode
+    protected void setHandler( int opcode, OpcodeHandler h ) {
+        handlers[opcode] = h;
+        transfers.clear();
+    }
 
-                            Type retType = Type.getReturnType(desc);
+    // Call of a method: analyzable methods are analyzed with the
+    // arguments on the stack, the others give TOP.
+    protected void invoke( MethodInsnNode ii, int pci, State s ) {
+        int opcode = ii.getOpcode();
+        String owner = ii.owner;
+        String name = ii.name;
+        String desc = ii.desc;
+
+        // Check analyzable
+        if ( ! analyzer.isAnalyzable(owner) ) {
+            // skip instruction, un-analizable method. just clean
+            // the stack from the arguments.
+            Type[] args = Type.getArgumentTypes(desc);
+            for( Type ty : args )
+                s.stackPop();
 
-                            if (retType.getSort() != Type.VOID ) {
-                                Variable ret = method_result.get(ms);
-                                ret = ret.clone();
-                                ret.cleanBounds();
-                                s.stackPush(ret);
-                            }
+            // pop the object reference if needed
+            if ( opcode != Opcodes.INVOKESTATIC )
+                s.stackPop();
+
+            Type retType = Type.getReturnType(desc);
+            if ( retType.getSort() != Type.VOID ) {
+                 s.stackPush(new Variable(retType.getDescriptor()
+                             ,Variable.Kind.LOCAL
+                             ,Variable.DomainValue.TOP
+                             ,Integer.MAX_VALUE,pci));
+            }
+        } else { // the method is in the classes to analyze
+            System.out.println("Analyze call to "+name);
+
+            Vector<Variable> arguments = new Vector<Variable>();
+            Type[] args = Type.getArgumentTypes(desc);
+            for( Type argument : args ) {
+                arguments.add(0, s.stackPop());
+            }
 
-                        } catch ( ClassNotFoundException e ) {
-                            throw new RuntimeException(e);
+            // search method going up in the class tree
+            // the summaries are not part of the frame, they are never
+            // rolled back
+            Trail outer = trailing ? Trail.install(null) : null;
+            try { 
+                boolean found = false;
+                ClassNode cl = Repository.lookupClass(owner);
+                MethodNode method = null;
+                do {
+                    //System.out.println("method is in " + cl.getClassName()+"?");
+                    List<MethodNode> ms = cl.methods;
+                    for( MethodNode clmethod : ms ) {
+                        if ( clmethod.name.equals(name) &&
+                                clmethod.desc.equals(desc) ) {
+                            if ( (clmethod.access & Opcodes.ACC_ABSTRACT) != 0 ) {
+                                found = false; // found, but keep going
+                                break;
+                            } else { // may be native
+                                method = clmethod;
+                                found = true; // found, stop it
+                                break;
+                            }
                         }
                     }
-            } else if ( opcode == Opcodes.GETSTATIC || opcode == Opcodes.GETFIELD ) {
-                    FieldInsnNode a = (FieldInsnNode)node;
-                    if ( opcode == Opcodes.GETFIELD ) {
-                        s.stackPop(); // objectref
-                    }
-                    Variable v;
-                    Type t = Type.getType(a.desc);
-
-                    if ( t.getSort() == Type.OBJECT ) {
-                        v = new Variable(t.getDescriptor()
-                                         ,Variable.Kind.FIELD,Variable.DomainValue.TOP
-                                         ,Integer.MAX_VALUE,pci);
-                        s.stackPush(v); // object reference
-                    } else if ( t.getSort() == Type.ARRAY ) {
-                         v = new Variable(t.getDescriptor()
-                                             ,Variable.Kind.FIELD,Variable.DomainValue.TOP
-                                             ,Integer.MAX_VALUE,pci);
-                        s.stackPush(v); // array reference
-                    } else {
-                         // Primitives
-                         v = new Variable(t.getDescriptor()
-                                         ,Variable.Kind.FIELD,Variable.DomainValue.TOP
-                                         ,Integer.MAX_VALUE,pci);
-                        s.stackPush(v);
+                    if ( !found ) {
+                        if (cl.superName != null)
+                             cl = Repository.lookupClass(cl.superName);
+                        else
+                             cl = null;
                     }
-            } else if ( opcode == Opcodes.PUTSTATIC ) {
-                    s.stackPop(); // value
-            } else if ( opcode == Opcodes.PUTFIELD ){
-                    s.stackPop(); // value
-                    s.stackPop(); // object ref
-            } else if ( opcode == Opcodes.LDC ) {
-                    LdcInsnNode ii = (LdcInsnNode)node;
-                    Object cst = ii.cst;
-                    Variable v = null;
-                    if (cst instanceof Integer) {
-                         int val = (Integer)cst;
-                         Variable.DomainValue f = (val>=0)?Variable.DomainValue.GEQ0:Variable.DomainValue.TOP;
-                         if(val>0) f = Variable.DomainValue.G0;
-                         v = new Variable("I", Variable.Kind.CONST, f, Integer.MAX_VALUE, pci);
-                    } else if (cst instanceof Float) {
-                         v = new Variable("F", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
-                    } else if (cst instanceof Long) {
-                         v = new Variable("J", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
-                    } else if (cst instanceof Double) {
-                         v = new Variable("D", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
-                    } else if (cst instanceof String) {
-                         v = new Variable("Ljava/lang/String;", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
-                    } else if (cst instanceof Type) {
-                         v = new Variable("Ljava/lang/Class;", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
+                } while( ! found && cl != null );
+                if( ! found && cl == null ) {
+                    throw new RuntimeException("Can't find method "+name);
+                }
+
+                // Re-assign cl to the class where method was found?
+                // No, analyzeMethod takes (MethodNode, ClassNode).
+                // If found, cl is the class node.
+
+                // the callee is analyzed with the arguments of the call,
+                // once for each context; its summary on its own is not
+                // used, nor shared with the calls
+                MethodSignature ms = new MethodSignature(method,cl);
+                Vector<Variable> parameters = moveArguments(method,arguments);
+                CallContext context = new CallContext(ms,parameters);
+                Variable summary = call_results.get(context);
+                if ( summary == null ) {
+                    boolean recursive = interpret(method,cl,parameters,context);
+                    if( recursive ) {
+                        assert call_results.get(context).getDomainValue() == Variable.DomainValue.TOP;
+                        interpret(method,cl,moveArguments(method,arguments),context);
+                        Variable ret = call_results.get(context);
+                        int iteration = 0;
+                        while( widening.join(ret,call_results.get(context)
+                                            ,++iteration) ) {
+                            interpret(method,cl
+                                     ,moveArguments(method,arguments),context);
+                        }
+                        call_results.remove(context);
+                        call_results.put(context,ret);
                     }
-                    if (v != null) s.stackPush(v);
-            } else if ( opcode == Opcodes.NEW ) {
-                    TypeInsnNode tin = (TypeInsnNode)node;
-                    s.stackPush(new Variable(Type.getObjectType(tin.desc).getDescriptor()
-                                ,Variable.Kind.LOCAL
-                                ,Variable.DomainValue.TOP
-                                ,Integer.MAX_VALUE,pci));
-            } else if ( opcode == Opcodes.ARRAYLENGTH ) {
-                Variable arrayref = s.stackPop();
-                Variable edge     = new Variable("I",Variable.Kind.LOCAL
-                                                ,Variable.DomainValue.GEQ0
-                                                ,Integer.MAX_VALUE,pci);
-                edge.addEdge(arrayref);
-                s.stackPush(edge);
-            } else if ( opcode == Opcodes.MONITORENTER
-                     || opcode == Opcodes.MONITOREXIT ) {
-                s.stackPop();
-            } else if ( opcode == Opcodes.NOP ) {
-                // ignore
-            } else if ( opcode == Opcodes.ATHROW ) {
-                Variable ex = s.stackPop();
-                String exType = ex.getType();
-                if (exType.startsWith("L") && exType.endsWith(";")) {
-                    exType = exType.substring(1, exType.length() - 1);
+                    summary = call_results.get(context);
                 }
 
-                // Iterate through try-catch blocks
-                for (Object o : m.tryCatchBlocks) {
-                    TryCatchBlockNode tcb = (TryCatchBlockNode) o;
-                    int start = getIndex(il, tcb.start);
-                    int end = getIndex(il, tcb.end);
+                if ( opcode != Opcodes.INVOKESTATIC )
+                    s.stackPop();
 
-                    if (pci >= start && pci < end) {
-                        boolean caught = false;
-                        if (tcb.type == null) {
-                            caught = true;
-                        } else {
-                            caught = isSubclass(exType, tcb.type);
-                        }
+                Type retType = Type.getReturnType(desc);
 
-                        if (caught) {
-                            s.clearStack();
-                            s.stackPush(ex);
+                if (retType.getSort() != Type.VOID ) {
+                    s.stackPush(summary.cloneUnbounded());
+                }
 
-                            int handler = getIndex(il, tcb.handler);
-                            return analyzeInstructions(m, il, handler, il.size() - 1, s, j);
-                        }
-                    }
+            } catch ( ClassNotFoundException e ) {
+                throw new RuntimeException(e);
+            } finally {
+                if ( trailing ) Trail.install(outer);
+            }
+        }
+    }
+
+    // Constant pushed by ACONST_NULL..LDC, null if unknown
+    protected Variable constant( AbstractInsnNode node, int pci ) {
+        int opcode = node.getOpcode();
+        if ( opcode == Opcodes.ACONST_NULL ) {
+            return new Variable("Ljava/lang/Object;",Variable.Kind.CONST
+                               ,Variable.DomainValue.TOP
+                               ,Integer.MAX_VALUE,pci);
+        } else if ( opcode == Opcodes.LDC ) {
+            LdcInsnNode ii = (LdcInsnNode)node;
+            Object cst = ii.cst;
+            Variable v = null;
+            if (cst instanceof Integer) {
+                 int val = (Integer)cst;
+                 Variable.DomainValue f = (val>=0)?Variable.DomainValue.GEQ0:Variable.DomainValue.TOP;
+                 if(val>0) f = Variable.DomainValue.G0;
+                 v = new Variable("I", Variable.Kind.CONST, f, Integer.MAX_VALUE, pci);
+            } else if (cst instanceof Float) {
+                 v = new Variable("F", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
+            } else if (cst instanceof Long) {
+                 v = new Variable("J", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
+            } else if (cst instanceof Double) {
+                 v = new Variable("D", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
+            } else if (cst instanceof String) {
+                 v = new Variable("Ljava/lang/String;", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
+            } else if (cst instanceof Type) {
+                 v = new Variable("Ljava/lang/Class;", Variable.Kind.CONST, Variable.DomainValue.TOP, Integer.MAX_VALUE, pci);
+            }
+            return v;
+        }
+
+        // Constant push instructions
+        // BIPUSH and SIPUSH are IntInsnNode
+        // Consts are InsnNode
+        int val = 0;
+        String sig = "I";
+        if (opcode == Opcodes.ICONST_M1) val = -1;
+        else if (opcode == Opcodes.ICONST_0) val = 0;
+        else if (opcode == Opcodes.ICONST_1) val = 1;
+        else if (opcode == Opcodes.ICONST_2) val = 2;
+        else if (opcode == Opcodes.ICONST_3) val = 3;
+        else if (opcode == Opcodes.ICONST_4) val = 4;
+        else if (opcode == Opcodes.ICONST_5) val = 5;
+        else if (opcode == Opcodes.LCONST_0) { val = 0; sig = "J"; }
+        else if (opcode == Opcodes.LCONST_1) { val = 1; sig = "J"; }
+        else if (opcode == Opcodes.FCONST_0) { val = 0; sig = "F"; }
+        else if (opcode == Opcodes.FCONST_1) { val = 1; sig = "F"; }
+        else if (opcode == Opcodes.FCONST_2) { val = 2; sig = "F"; }
+        else if (opcode == Opcodes.DCONST_0) { val = 0; sig = "D"; }
+        else if (opcode == Opcodes.DCONST_1) { val = 1; sig = "D"; }
+        else if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+            val = ((IntInsnNode)node).operand;
+        }
+
+        Variable.DomainValue f;
+        if ( val > 0 ) {
+            f = Variable.DomainValue.G0;
+        } else if ( val >= 0 ) {
+            f = Variable.DomainValue.GEQ0;
+        } else {
+            f = Variable.DomainValue.TOP;
+        }
+        return new Variable(sig,Variable.Kind.CONST
+                           ,f,Integer.MAX_VALUE
+                           ,pci);
+    }
+
+    // pops the top of the stack into local var
+    protected void storeLocal( State s, int var, int pci ) {
+        Variable v = s.stackPop();
+        // copy of another local: keep the two apart
+        int from = s.slotOf(v);
+        if ( from >= 0 ) {
+            v = v.clone();
+        }
+        v.setIndex(var);
+        // Next instruction pos
+        v.setStartPC(pci + 1);
+        v.setKind(Variable.Kind.LOCAL);
+        s.store(var,v);
+        if ( from >= 0 && from != var ) {
+            s.alias(from,var);
+        }
+    }
+
+    // Stack manipulation instructions, POP..SWAP
+    protected static void shuffle( int opcode, State s ) {
+        if ( opcode == Opcodes.DUP ) {
+            Variable top = s.stackPeek();
+            assert top.getCategory() == 1;
+            s.stackPush(top);
+        } else if ( opcode == Opcodes.DUP_X1 ) {
+            Variable top_0 = s.stackPop();
+            Variable top_1 = s.stackPop();
+            assert top_0.getCategory() == 1;
+            assert top_1.getCategory() == 1;
+            s.stackPush(top_0);
+            s.stackPush(top_1);
+            s.stackPush(top_0);
+        } else if ( opcode == Opcodes.DUP_X2 ) {
+            Variable top_0 = s.stackPop();
+            Variable top_1 = s.stackPop();
+            Variable top_2 = null;
+            if ( top_0.getCategory() == 1 && top_1.getCategory() == 2 ) {
+                s.stackPush(top_0);
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+            } else {
+                top_2 = s.stackPop();
+                assert top_0.getCategory() == 1;
+                assert top_1.getCategory() == 1;
+                assert top_2.getCategory() == 1;
+                s.stackPush(top_0);
+                s.stackPush(top_2);
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+            }
+        } else if ( opcode == Opcodes.DUP2 ) {
+            Variable top = s.stackPeek();
+            if ( top.getCategory() == 2) {
+                s.stackPush(top);
+            } else {
+                Variable top_0 = s.stackPop();
+                Variable top_1 = s.stackPop();
+
+                assert top_0.getCategory() == 1;
+                assert top_1.getCategory() == 1;
+
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+            }
+        } else if ( opcode == Opcodes.DUP2_X1 ) {
+            Variable top_0 = s.stackPop();
+            Variable top_1 = s.stackPop();
+            Variable top_2 = null;
+            if ( top_0.getCategory() == 2 && top_1.getCategory() == 1 ) {
+                s.stackPush(top_0);
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+            } else {
+                top_2 = s.stackPop();
+                assert top_0.getCategory() == 1;
+                assert top_1.getCategory() == 1;
+                assert top_2.getCategory() == 1;
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+                s.stackPush(top_2);
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+            }
+        } else if ( opcode == Opcodes.DUP2_X2 ) {
+            Variable top_0 = s.stackPop();
+            Variable top_1 = s.stackPop();
+            Variable top_2 = null;
+            Variable top_3 = null;
+            if ( top_0.getCategory() == 2 && top_1.getCategory() == 2 ) {
+                s.stackPush(top_0); // form 4
+                s.stackPush(top_1);
+                s.stackPush(top_0);
+            } else {
+                top_2 = s.stackPop();
+                if ( top_0.getCategory() == 1 && top_1.getCategory() == 1
+                     && top_2.getCategory() == 2 ) {
+                    s.stackPush(top_1); // form 3
+                    s.stackPush(top_0);
+                    s.stackPush(top_2);
+                    s.stackPush(top_1);
+                    s.stackPush(top_0);
+                } else if ( top_0.getCategory() == 2 
+                         && top_1.getCategory() == 1
+                         && top_2.getCategory() == 1 ) { // form 2
+                    s.stackPush(top_0); 
+                    s.stackPush(top_2);
+                    s.stackPush(top_1);
+                    s.stackPush(top_0);
+                } else { // form 1
+                    top_3 = s.stackPop();
+                    assert top_0.getCategory() == 1;
+                    assert top_1.getCategory() == 1;
+                    assert top_2.getCategory() == 1;
+                    assert top_3.getCategory() == 1;
+                    s.stackPush(top_1);
+                    s.stackPush(top_0);
+                    s.stackPush(top_3);
+                    s.stackPush(top_2);
+                    s.stackPush(top_1);
+                    s.stackPush(top_0);
                 }
-                return s;
-            } else if ( opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN ) {
-                // Return
-                if ( s.stackSize() > 0 ) {
-                    s.setReturn(s.stackPop());
+            }
+        } else if ( opcode == Opcodes.POP ) {
+            Variable top = s.stackPop();
+            assert top.getCategory() == 1;
+        } else if ( opcode == Opcodes.POP2 ) {
+            Variable top = s.stackPop();
+            if ( top.getCategory() == 1 ) {
+                Variable top_1 = s.stackPop();
+                assert top_1.getCategory() == 1;
+            }
+        } else if ( opcode == Opcodes.SWAP ) {
+            Variable a = s.stackPop();
+            Variable b = s.stackPop();
+
+            assert a.getCategory() == 1;
+            assert b.getCategory() == 1;
+
+            s.stackPush(a);
+            s.stackPush(b);
+        }
+    }
+
+    // Refines the states of the two branches of a conditional jump with
+    // the outcome of the comparison.
+    protected void branch( int opcode
+                         , State true_branch, State false_branch ) {
+        refine(opcode,true_branch,true);
+        refine(opcode,false_branch,false);
+    }
+
+    // outcomes of IFxx and IF_ICMPxx, in the order of the opcodes. The
+    // negation of a relation is the one next to it (rel ^ 1).
+    private static final int EQ = 0, NE = 1, LT = 2, GE = 3, GT = 4, LE = 5;
+
+    // Refines one side of a conditional jump: taken is the side of the
+    // jump target.
+    protected void refine( int opcode, State s, boolean taken ) {
+        Variable v1,v2;
+
+        if ( opcode >= Opcodes.IFEQ && opcode <= Opcodes.IFLE ) {
+            // v1 compared with 0
+            int rel = opcode - Opcodes.IFEQ;
+            v1 = s.stackPop();
+            switch( taken ? rel : rel ^ 1 ) {
+                case EQ: // =0
+                case GE: // >=0
+                    v1.setDomainValue(Variable.DomainValue.GEQ0);
+                    break;
+                case LT: // <0
+                    v1.setDomainValue(Variable.DomainValue.TOP);
+                    break;
+                case GT: // >0
+                    v1.setDomainValue(Variable.DomainValue.G0);
+                    break;
+                case LE: // <=0
+                    if( v1.getDomainValue() != Variable.DomainValue.GEQ0 ) {
+                        v1.setDomainValue(Variable.DomainValue.TOP);
+                    }
+                    break;
+                default: // ≠0
+                    break;
+            }
+        } else if ( opcode >= Opcodes.IF_ICMPEQ && opcode <= Opcodes.IF_ICMPLE ) {
+            int rel = opcode - Opcodes.IF_ICMPEQ;
+            v2 = s.stackPop();
+            v1 = s.stackPop();
+            switch( taken ? rel : rel ^ 1 ) {
+                case EQ: // v1 == v2
+                    v2.cmpeq(v1);
+                    break;
+                case LT:
+                    v1.cmplt(v2); // v1 <  v2
+                    v2.cmpge(v1); // v2 >= v1
+                    break;
+                case GE:
+                    v1.cmpge(v2); // v1 >= v2
+                    v2.cmple(v1); // v2 <= v1
+                    break;
+                case GT:
+                    v1.cmpgt(v2); // v1 >  v2
+                    v2.cmple(v1); // v2 <= v1
+                    break;
+                case LE:
+                    v1.cmple(v2); // v1 <= v2
+                    v2.cmpge(v1); // v2 >= v1
+                    break;
+                default: // v1 ≠ v2
+                    break;
+            }
+        } else if ( opcode == Opcodes.IFNULL
+                 || opcode == Opcodes.IFNONNULL ) {
+            s.stackPop();
+        } else if ( opcode == Opcodes.IF_ACMPEQ
+                 || opcode == Opcodes.IF_ACMPNE ) {
+            s.stackPop();
+            s.stackPop();
+        } else {
+            throw new RuntimeException("Unknown if bytecode");
+        }
+    }
+
+    // Index of the handler catching ex thrown at pci, -1 if not caught.
+    protected int findHandler( MethodNode m, InsnList il
+                             , int pci, Variable ex ) {
+        String exType = ex.getType();
+        if (exType.startsWith("L") && exType.endsWith(";")) {
+            exType = exType.substring(1, exType.length() - 1);
+        }
+
+        // Iterate through try-catch blocks
+        for (Object o : m.tryCatchBlocks) {
+            TryCatchBlockNode tcb = (TryCatchBlockNode) o;
+            int start = getIndex(il, tcb.start);
+            int end = getIndex(il, tcb.end);
+
+            if (pci >= start && pci < end) {
+                boolean caught = false;
+                if (tcb.type == null) {
+                    caught = true;
                 } else {
-                    s.setReturn(new Variable("V"
-                                ,Variable.Kind.LOCAL
-                                ,Variable.DomainValue.TOP
-                                ,Integer.MAX_VALUE,pci));
+                    caught = isSubclass(exType, tcb.type);
                 }
-                return s;
-            } else {
-                 // Ignore unsupported opcodes or throw?
-                 // throw new RuntimeException("Uknown type of bytecode: "+opcode);
-            }
 
-            // load next bytecode
-            node = node.getNext();
-            pci = getIndex(il, node);
+                if (caught) {
+                    return getIndex(il, tcb.handler);
+                }
+            }
         }
+        return -1;
     }
 
     public Vector<BadArrayAccess> getReports() {
         return reports;
     }
 
-    private final void makeNewReport( MethodNode m, ClassNode jclass, int idx ) {
+    protected void makeNewReport( MethodNode m, ClassNode jclass, int idx ) {
         // Line number lookup
         int line = -1;
         // Search for LineNumberNode before idx
@@ -989,7 +1054,9 @@ class Analysis {
 
         BadArrayAccess ba = new BadArrayAccess(jclass.sourceFile
                                       ,m.name
-                                      ,line);
+                                      ,line
+                                      ,jclass.name
+                                      ,m.desc);
         if ( ! reports.contains(ba) ) {
             reports.add(ba);
         }
@@ -1001,13 +1068,11 @@ class Analysis {
 
     private boolean isSubclass(String child, String parent) {
         if (child.equals(parent)) return true;
-        try {
-            ClassNode c = Repository.lookupClass(child);
-            if (c.superName != null) {
-                return isSubclass(c.superName, parent);
-            }
-        } catch (ClassNotFoundException e) {
+        ClassNode c = Repository.findClass(child);
+        if (c == null) {
             System.err.println("Class not found: " + child);
+        } else if (c.superName != null) {
+            return isSubclass(c.superName, parent);
         }
         return false;
     }
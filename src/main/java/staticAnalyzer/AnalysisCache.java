@@ -0,0 +1,426 @@
+package staticAnalyzer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+// Results of the previous run, kept in a directory: for every class the
+// hash of its class file and, for every method, its summary, its reports
+// and its calls, the methods they resolved to and the classes walked to
+// resolve them. The calls make the call graph of the previous run, read
+// backwards to find the callers of a method.
+//
+// A class whose file changed is analyzed again, and so is a method of
+// another class with a call that resolves elsewhere now (looked for only
+// if the call walked through a class that changed). The callers of a
+// method analyzed again are analyzed again too, since they analyze it
+// with their own arguments, and so on; the other methods keep the
+// summaries and the reports they had.
+// Results saved by another version of the analysis, or with other
+// settings, are not used.
+//
+// There is a file per class, named by the hash of the class name,
+// written with a DataOutputStream:
+//   magic version class hash
+//   methods: count (name desc [variable] calls walked reports)*
+//     calls: count (owner name desc resolved)*, resolved is the class of
+//     the method run, "" if none (or not analyzable)
+//     walked: count (class analyzable)*
+//     reports: count ([file] line)*
+class AnalysisCache {
+    private static final int MAGIC = 0x41414302;
+
+    static class Method {
+        private Variable summary = null;
+        // the calls, and the method each one resolved to (or null)
+        private List<MethodSignature> calls = new ArrayList<MethodSignature>();
+        private List<MethodSignature> callees = new ArrayList<MethodSignature>();
+        // classes walked to resolve the calls, and if they were analyzable
+        private Map<String,Boolean> walked = new LinkedHashMap<String,Boolean>();
+        private List<BadArrayAccess> reports = new ArrayList<BadArrayAccess>();
+    }
+
+    private File dir;
+    private String version;
+    // hash of the class file of every input class
+    private Map<String,byte[]> hashes = new HashMap<String,byte[]>();
+    // methods of the classes unchanged
+    private Map<MethodSignature,Method> methods =
+            new LinkedHashMap<MethodSignature,Method>();
+    private Set<String> unchanged = new LinkedHashSet<String>();
+    private List<String> changed = new ArrayList<String>();
+    private Set<MethodSignature> stale = null;
+    private int reanalyzed = 0;
+    private int rounds = 0;
+    private int stored = 0;
+
+    // version names the analyzer and the settings its results depend on
+    public AnalysisCache( File dir, String version ) throws IOException {
+        if ( ! dir.isDirectory() && ! dir.mkdirs() )
+            throw new IOException("Can't create "+dir);
+        this.dir = dir;
+        this.version = version;
+    }
+
+    // Hashes the input classes and reads the entries of the ones whose
+    // file didn't change.
+    public void load( Collection<String> names ) throws IOException {
+        for( String name : names ) {
+            byte[] file = Repository.readClass(name);
+            byte[] hash = file != null ? digest(file) : null;
+            if ( hash != null )
+                hashes.put(name,hash);
+            if ( hash == null || ! read(name,hash) )
+                changed.add(name);
+            else
+                unchanged.add(name);
+        }
+    }
+
+    // the classes to analyze again
+    public List<String> getChanged() {
+        return changed;
+    }
+
+    // Methods of the classes unchanged with a call that resolves to
+    // another method now. A call is resolved again only if it walked a
+    // class that changed, or that is analyzable now and wasn't or the
+    // other way round.
+    public Set<MethodSignature> getStale( Analyzer analyzer ) {
+        if ( stale != null )
+            return stale;
+        Set<String> changed = new HashSet<String>(this.changed);
+        stale = new LinkedHashSet<MethodSignature>();
+        for( Map.Entry<MethodSignature,Method> e : methods.entrySet() ) {
+            Method m = e.getValue();
+            boolean walked = false;
+            for( Map.Entry<String,Boolean> w : m.walked.entrySet() ) {
+                boolean analyzable = analyzer.isAnalyzable(w.getKey());
+                if ( analyzable != w.getValue()
+                        || analyzable && changed.contains(w.getKey()) ) {
+                    walked = true;
+                    break;
+                }
+            }
+            for( int i = 0; walked && i < m.calls.size(); i++ ) {
+                MethodSignature now = resolve(m.calls.get(i),analyzer
+                                             ,new HashMap<String,Boolean>());
+                MethodSignature then = m.callees.get(i);
+                if ( now == null ? then != null : then == null || ! now.equals(then) ) {
+                    stale.add(e.getKey());
+                    break;
+                }
+            }
+        }
+        return stale;
+    }
+
+    // the summaries of the classes unchanged
+    public Map<MethodSignature,Variable> getSummaries() {
+        Map<MethodSignature,Variable> s = new LinkedHashMap<MethodSignature,Variable>();
+        for( Map.Entry<MethodSignature,Method> e : methods.entrySet() ) {
+            if ( e.getValue().summary != null )
+                s.put(e.getKey(),e.getValue().summary);
+        }
+        return s;
+    }
+
+    // The callers of every method: from the cache for the classes
+    // unchanged, from their code for the ones in fresh.
+    public Map<MethodSignature,Set<MethodSignature>> getCallers(
+            Collection<String> fresh, Analyzer analyzer ) {
+        Map<MethodSignature,Set<MethodSignature>> callers =
+                new HashMap<MethodSignature,Set<MethodSignature>>();
+        Set<String> skip = new HashSet<String>(fresh);
+        for( Map.Entry<MethodSignature,Method> e : methods.entrySet() ) {
+            if ( ! skip.contains(e.getKey().getOwner()) )
+                addCallers(callers,e.getKey(),e.getValue().callees);
+        }
+        for( String name : fresh ) {
+            ClassNode cn = Repository.findClass(name);
+            if ( cn == null )
+                continue;
+            for( MethodNode m : cn.methods ) {
+                Method calls = calls(m,analyzer);
+                addCallers(callers,new MethodSignature(m,cn),calls.callees);
+            }
+        }
+        return callers;
+    }
+
+    private static void addCallers( Map<MethodSignature,Set<MethodSignature>> callers
+                                  , MethodSignature caller
+                                  , List<MethodSignature> callees ) {
+        for( MethodSignature c : callees ) {
+            if ( c == null )
+                continue;
+            Set<MethodSignature> s = callers.get(c);
+            if ( s == null ) {
+                s = new LinkedHashSet<MethodSignature>();
+                callers.put(c,s);
+            }
+            s.add(caller);
+        }
+    }
+
+    // the reports saved for a method of a class unchanged
+    public List<BadArrayAccess> getReports( MethodSignature ms ) {
+        Method m = methods.get(ms);
+        return m != null ? m.reports : Collections.<BadArrayAccess>emptyList();
+    }
+
+    public Set<MethodSignature> getMethods() {
+        return methods.keySet();
+    }
+
+    // counts for the report of the run
+    public void analyzed( int methods, int rounds ) {
+        this.reanalyzed = methods;
+        this.rounds = rounds;
+    }
+
+    // Saves cn as analyzed in this run: the summaries it has now, the
+    // reports of its methods and the calls in its code.
+    public void store( ClassNode cn, Analyzer analyzer
+                     , Map<MethodSignature,Variable> summaries
+                     , Collection<BadArrayAccess> reports ) throws IOException {
+        byte[] hash = hashes.get(cn.name);
+        if ( hash == null )
+            return;
+        Map<MethodSignature,Method> entry = new LinkedHashMap<MethodSignature,Method>();
+        for( MethodNode m : cn.methods ) {
+            MethodSignature ms = new MethodSignature(m,cn);
+            Method e = calls(m,analyzer);
+            e.summary = summaries.get(ms);
+            entry.put(ms,e);
+        }
+        for( BadArrayAccess ba : reports ) {
+            if ( ! cn.name.equals(ba.getOwner()) )
+                continue;
+            Method e = entry.get(new MethodSignature(cn.name,ba.getMethod()
+                                                    ,ba.getDesc()));
+            if ( e != null )
+                e.reports.add(ba);
+        }
+        write(cn.name,hash,entry);
+        stored++;
+    }
+
+    // the calls of m, resolved
+    private static Method calls( MethodNode m, Analyzer analyzer ) {
+        Method e = new Method();
+        Set<MethodSignature> calls = new LinkedHashSet<MethodSignature>();
+        for( AbstractInsnNode insn = m.instructions.getFirst()
+                ; insn != null; insn = insn.getNext() ) {
+            if ( insn instanceof MethodInsnNode ) {
+                MethodInsnNode mi = (MethodInsnNode)insn;
+                calls.add(new MethodSignature(mi.owner,mi.name,mi.desc));
+            }
+        }
+        for( MethodSignature call : calls ) {
+            e.calls.add(call);
+            e.callees.add(resolve(call,analyzer,e.walked));
+        }
+        return e;
+    }
+
+    // The method a call runs, as Analysis.invoke looks it up, null if
+    // none or not analyzable; the classes walked are added to walked.
+    private static MethodSignature resolve( MethodSignature call
+                                          , Analyzer analyzer
+                                          , Map<String,Boolean> walked ) {
+        if ( ! analyzer.isAnalyzable(call.getOwner()) ) {
+            walked.put(call.getOwner(),false);
+            return null;
+        }
+        ClassNode cl = Repository.findClass(call.getOwner());
+        while( cl != null ) {
+            walked.put(cl.name,analyzer.isAnalyzable(cl.name));
+            for( MethodNode cm : cl.methods ) {
+                if ( cm.name.equals(call.getName()) && cm.desc.equals(call.getDesc())
+                        && (cm.access & Opcodes.ACC_ABSTRACT) == 0 )
+                    return new MethodSignature(cm,cl);
+            }
+            cl = cl.superName != null
+               ? Repository.findClass(cl.superName) : null;
+        }
+        return null;
+    }
+
+    private File file( String name ) {
+        return new File(dir,hex(digest(name.getBytes(StandardCharsets.UTF_8)),16)
+                            +".cache");
+    }
+
+    // Reads the entry of name into methods; false if there is none for
+    // this version, or it is for another hash.
+    private boolean read( String name, byte[] hash ) throws IOException {
+        File f = file(name);
+        if ( ! f.exists() )
+            return false;
+        Map<MethodSignature,Method> entry = new LinkedHashMap<MethodSignature,Method>();
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f)));
+        try {
+            if ( in.readInt() != MAGIC || ! in.readUTF().equals(version)
+                    || ! in.readUTF().equals(name) )
+                return false;
+            byte[] h = new byte[in.readUnsignedByte()];
+            in.readFully(h);
+            boolean same = Arrays.equals(h,hash);
+            for( int n = in.readInt(); n > 0; n-- ) {
+                String mname = in.readUTF();
+                String desc = in.readUTF();
+                Method e = new Method();
+                if ( in.readBoolean() )
+                    e.summary = readVariable(in);
+                for( int c = in.readInt(); c > 0; c-- ) {
+                    MethodSignature call = new MethodSignature(in.readUTF()
+                                                   ,in.readUTF(),in.readUTF());
+                    String resolved = in.readUTF();
+                    e.calls.add(call);
+                    e.callees.add(resolved.isEmpty() ? null
+                                  : new MethodSignature(resolved,call.getName()
+                                                       ,call.getDesc()));
+                }
+                for( int c = in.readInt(); c > 0; c-- ) {
+                    e.walked.put(in.readUTF(),in.readBoolean());
+                }
+                for( int c = in.readInt(); c > 0; c-- ) {
+                    String file = in.readBoolean() ? in.readUTF() : null;
+                    e.reports.add(new BadArrayAccess(file,mname,in.readInt()
+                                                    ,name,desc));
+                }
+                entry.put(new MethodSignature(name,mname,desc),e);
+            }
+            if ( ! same )
+                return false;
+        } catch ( EOFException e ) {
+            return false; // truncated, analyzed again
+        } catch ( IndexOutOfBoundsException e ) {
+            return false; // bad enum ordinal
+        } finally {
+            in.close();
+        }
+        methods.putAll(entry);
+        return true;
+    }
+
+    // written to a temporary file and renamed, so a reader never sees half
+    private void write( String name, byte[] hash, Map<MethodSignature,Method> entry )
+            throws IOException {
+        File f = file(name);
+        File tmp = new File(dir,f.getName()+".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(version);
+            out.writeUTF(name);
+            out.writeByte(hash.length);
+            out.write(hash);
+            out.writeInt(entry.size());
+            for( Map.Entry<MethodSignature,Method> me : entry.entrySet() ) {
+                Method e = me.getValue();
+                out.writeUTF(me.getKey().getName());
+                out.writeUTF(me.getKey().getDesc());
+                out.writeBoolean(e.summary != null);
+                if ( e.summary != null )
+                    writeVariable(out,e.summary);
+                out.writeInt(e.calls.size());
+                for( int i = 0; i < e.calls.size(); i++ ) {
+                    MethodSignature c = e.calls.get(i);
+                    MethodSignature r = e.callees.get(i);
+                    out.writeUTF(c.getOwner());
+                    out.writeUTF(c.getName());
+                    out.writeUTF(c.getDesc());
+                    out.writeUTF(r != null ? r.getOwner() : "");
+                }
+                out.writeInt(e.walked.size());
+                for( Map.Entry<String,Boolean> w : e.walked.entrySet() ) {
+                    out.writeUTF(w.getKey());
+                    out.writeBoolean(w.getValue());
+                }
+                out.writeInt(e.reports.size());
+                for( BadArrayAccess ba : e.reports ) {
+                    out.writeBoolean(ba.getFile() != null);
+                    if ( ba.getFile() != null )
+                        out.writeUTF(ba.getFile());
+                    out.writeInt(ba.getLine());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if ( ! tmp.renameTo(f) ) {
+            f.delete();
+            if ( ! tmp.renameTo(f) )
+                throw new IOException("Can't write "+f);
+        }
+    }
+
+    // type kind value index startpc safe edge
+    static void writeVariable( DataOutput out, Variable v )
+            throws IOException {
+        AbstractValue val = v.getValue();
+        out.writeUTF(val.getType());
+        out.writeByte(val.getKind().ordinal());
+        out.writeByte(val.getValue().ordinal());
+        out.writeInt(v.getIndex());
+        out.writeInt(v.getStartPC());
+        writeWords(out,BoundSet.toWords(val.getSafe()));
+        writeWords(out,BoundSet.toWords(val.getEdge()));
+    }
+
+    static Variable readVariable( DataInput in ) throws IOException {
+        String type = in.readUTF();
+        Variable.Kind kind = Variable.Kind.values()[in.readUnsignedByte()];
+        Variable.DomainValue value =
+                Variable.DomainValue.values()[in.readUnsignedByte()];
+        int index = in.readInt();
+        int startpc = in.readInt();
+        BoundSet safe = BoundSet.fromWords(readWords(in));
+        BoundSet edge = BoundSet.fromWords(readWords(in));
+        return new Variable(AbstractValue.of(type,kind,value,safe,edge)
+                           ,index,startpc);
+    }
+
+    private static void writeWords( DataOutput out, long[] words )
+            throws IOException {
+        out.writeShort(words.length);
+        for( long w : words )
+            out.writeLong(w);
+    }
+
+    private static long[] readWords( DataInput in ) throws IOException {
+        long[] words = new long[in.readUnsignedShort()];
+        for( int i = 0; i < words.length; i++ )
+            words[i] = in.readLong();
+        return words;
+    }
+
+    private static byte[] digest( byte[] bytes ) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex( byte[] bytes, int n ) {
+        StringBuilder s = new StringBuilder();
+        for( int i = 0; i < n && i < bytes.length; i++ )
+            s.append(String.format("%02x",bytes[i]));
+        return s.toString();
+    }
+
+    public String toString() {
+        return "Cache: "+unchanged.size()+" classes reused, "+changed.size()
+               +" changed, "+reanalyzed+" methods analyzed again in "+rounds
+               +" rounds, "+stored+" classes saved";
+    }
+}
@@ -1,37 +1,654 @@
 package staticAnalyzer;
 
 import java.util.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 public class Analyzer {
 
+    // the version of the analysis, bumped when a change to it can change
+    // the summaries or the reports, so the saved ones are not used
+    private static final int VERSION = 4;
+
     private Analysis result = new Analysis(this);
+    private SummaryCache summaries = new SummaryCache();
     private Vector<String> class_names = new Vector<String>();
+    private Set<String> analyzable = new HashSet<String>();
+    private int threads = 1;
+    private boolean bottom_up = false;
+    private CostProfile profile = null;
+    private File profile_file = null;
+    private File cache_dir = null;
+    private File checkpoint_file = null;
+    private long checkpoint_every = 60;
+    private boolean resume = false;
+    private Checkpoint checkpoint = null;
+    private Vector<BadArrayAccess> reports = new Vector<BadArrayAccess>();
 
-    public Analyzer() {}
+    public Analyzer() {
+        result.setSummaries(summaries);
+    }
 
     public Analyzer( Vector<String> class_names ) 
             throws ClassNotFoundException {
+        this();
         analyzeClasses(class_names);
     }
 
+    // analyze the methods with a worklist over their basic blocks
+    public void setWorklist( boolean worklist ) {
+        result.setWorklist(worklist);
+    }
+
+    // explore the branches rolling back the changes instead of copying
+    // the frame (not with the worklist)
+    public void setTrailing( boolean trailing ) {
+        result.setTrailing(trailing);
+    }
+
+    // interpret every instruction, not only the ones that can matter to
+    // an array access
+    public void setSlicing( boolean slicing ) {
+        result.setSlicing(slicing);
+    }
+
+    // analyze the classes on a pool of threads, with a sorted report
+    public void setThreads( int threads ) {
+        if ( threads < 1 )
+            throw new IllegalArgumentException("Threads must be positive");
+        this.threads = threads;
+    }
+
+    // analyze the components of the call graph callees first, instead
+    // of the callees from their first call
+    public void setBottomUp( boolean bottom_up ) {
+        this.bottom_up = bottom_up;
+    }
+
+    // time the methods, reading and then updating the profile in file,
+    // to schedule the longest first
+    public void setProfile( String file ) throws IOException {
+        profile_file = new File(file);
+        profile = new CostProfile(profile_file);
+        result.setProfile(profile);
+    }
+
+    // reuse the results of the classes unchanged since a run saved them in
+    // dir, and save the ones of this run there
+    public void setCache( String dir ) {
+        cache_dir = new File(dir);
+    }
+
+    // save the classes done, with their summaries and reports, to file
+    // every so many seconds, to go on from there after a crash
+    public void setCheckpoint( String file, long seconds ) {
+        if ( seconds < 1 )
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        checkpoint_file = new File(file);
+        checkpoint_every = seconds;
+    }
+
+    // go on from the checkpoint, analyzing only the classes not done
+    public void setResume( boolean resume ) {
+        this.resume = resume;
+    }
+
+    // how the loop fixpoints are bounded
+    public WideningPolicy getWidening() {
+        return result.getWidening();
+    }
+
+    // the reports of the last analyzeClasses, sorted if by threads
+    public Vector<BadArrayAccess> getReports() {
+        return reports;
+    }
+
+    // Forgets the classes and the summaries of the last analyzeClasses,
+    // keeping the settings, to analyze the classes again after they
+    // changed.
+    public void reset() {
+        summaries = new SummaryCache();
+        result = result.fork();
+        result.setSummaries(summaries);
+        class_names.clear();
+        analyzable.clear();
+        reports = new Vector<BadArrayAccess>();
+    }
+
     public void analyzeClasses( Vector<String> class_names )
             throws ClassNotFoundException {
+        Trail.use(result.isTrailing());
         for( String s : class_names ) {
             this.class_names.add(s);
+            this.analyzable.add(s);
         }
-        for( String s : class_names ) {
-            result.analyzeMethods(Repository.lookupClass(s));
+        // only the classes changed are analyzed, and then what depends on
+        // them
+        AnalysisCache cache = openCache(class_names);
+        Vector<String> todo = class_names;
+        if ( cache != null ) {
+            todo = new Vector<String>(cache.getChanged());
         }
-        if( result.getReports().size() > 0 ) {
-            System.out.println(result.getReports());
+        // and the ones done before a crash are not analyzed again
+        checkpoint = openCheckpoint();
+        if ( checkpoint != null ) {
+            Vector<String> left = new Vector<String>();
+            for( String s : todo ) {
+                if ( ! checkpoint.isDone(s) )
+                    left.add(s);
+            }
+            todo = left;
+            checkpoint.start(checkpoint_every);
+        }
+        // the classes are loaded while the first ones are analyzed, and
+        // scanned for sites as the analysis gets to them; with a budget
+        // they would only push each other out
+        SiteIndex sites = new SiteIndex(this,todo);
+        result.setSites(sites);
+        Prefetcher prefetcher = null;
+        if ( ! Repository.isBounded() ) {
+            prefetcher = new Prefetcher(this.class_names,threads);
+            prefetcher.start();
+        }
+        Vector<BadArrayAccess> reports;
+        try {
+            if ( bottom_up ) {
+                reports = analyzeBottomUp(cache != null || checkpoint != null
+                                          ? todo : this.class_names);
+            } else if ( threads > 1 ) {
+                reports = analyzeParallel(todo);
+            } else {
+                for( String s : todo ) {
+                    result.analyzeMethods(Repository.lookupClass(s));
+                    if ( checkpoint != null )
+                        checkpoint.done(s);
+                }
+                reports = result.getReports();
+            }
+            System.out.println(sites);
+        } finally {
+            if ( prefetcher != null )
+                prefetcher.stop();
+            closeCheckpoint();
+        }
+        if ( checkpoint != null && ! checkpoint.getResumed().isEmpty() ) {
+            TreeSet<BadArrayAccess> all = new TreeSet<BadArrayAccess>(reports);
+            all.addAll(checkpoint.getResumed());
+            reports = new Vector<BadArrayAccess>(all);
+        }
+        if ( cache != null ) {
+            reports = analyzeIncremental(cache,reports);
+        }
+        this.reports = reports;
+        if( reports.size() > 0 ) {
+            System.out.println(reports);
         } else {
             System.out.println("No error found");
         }
+        if ( threads > 1 ) {
+            System.out.println(summaries);
+        }
+        if ( Repository.isBounded() ) {
+            System.out.println(Repository.getStats());
+        }
+        if ( cache != null ) {
+            System.out.println(cache);
+        }
+        if ( checkpoint != null ) {
+            System.out.println(checkpoint);
+        }
+        if( getWidening().getWidenings() > 0 ) {
+            System.out.println("Widening fired "
+                               +getWidening().getWidenings()+" times");
+        }
+        if ( profile != null ) {
+            try {
+                profile.save(profile_file);
+            } catch ( IOException e ) {
+                System.err.println("Can't save the profile: "+e.getMessage());
+            }
+        }
+    }
+
+    // The cache of cache_dir, with the summaries of the methods unchanged
+    // shared; null if there is none or it can't be read.
+    private AnalysisCache openCache( List<String> names ) {
+        if ( cache_dir == null )
+            return null;
+        try {
+            AnalysisCache cache = new AnalysisCache(cache_dir,version());
+            cache.load(names);
+            Set<MethodSignature> stale = cache.getStale(this);
+            for( Map.Entry<MethodSignature,Variable> e
+                    : cache.getSummaries().entrySet() ) {
+                if ( ! stale.contains(e.getKey()) )
+                    summaries.put(e.getKey(),e.getValue());
+            }
+            return cache;
+        } catch ( IOException e ) {
+            System.err.println("Can't read the cache: "+e.getMessage());
+            return null;
+        }
+    }
+
+    // The checkpoint of checkpoint_file, read back if resuming; null if
+    // there is none.
+    private Checkpoint openCheckpoint() {
+        if ( checkpoint_file == null )
+            return null;
+        Checkpoint c = new Checkpoint(checkpoint_file,version(),summaries);
+        if ( resume ) {
+            try {
+                if ( ! c.resume() )
+                    System.err.println("No checkpoint to resume in "+checkpoint_file);
+            } catch ( IOException e ) {
+                System.err.println("Can't read the checkpoint: "+e.getMessage());
+            }
+        }
+        c.addReports(result.getReports());
+        return c;
+    }
+
+    // stops the checkpoints, saving the last one
+    private void closeCheckpoint() {
+        if ( checkpoint == null )
+            return;
+        try {
+            checkpoint.stop();
+        } catch ( IOException e ) {
+            System.err.println("Can't save the checkpoint: "+e.getMessage());
+        }
+    }
+
+    // the analysis and the settings the results depend on, other than
+    // the classes
+    private String version() {
+        WideningPolicy w = getWidening();
+        return VERSION+" "+Runtime.version().feature()+" "+w.getKind()
+               +" "+w.getThreshold()+" "+w.getLimit()+" "+result.getSettings()
+               +(bottom_up ? " bottom-up" : " top-down");
+    }
+
+    // After the changed classes are analyzed, analyzes again the stale
+    // methods and then, a round at a time, the callers of the methods
+    // analyzed again: a caller analyzes its callees with its own
+    // arguments, so it can change whatever their summaries. Saves the
+    // classes with a method analyzed, and returns the reports with the
+    // saved ones of the methods not analyzed, sorted.
+    private Vector<BadArrayAccess> analyzeIncremental( AnalysisCache cache
+                                                     , Vector<BadArrayAccess> reports )
+            throws ClassNotFoundException {
+        Set<MethodSignature> stale = cache.getStale(this);
+        Set<String> fresh = new LinkedHashSet<String>(cache.getChanged());
+        for( MethodSignature ms : stale )
+            fresh.add(ms.getOwner());
+        Map<MethodSignature,Set<MethodSignature>> callers =
+                cache.getCallers(fresh,this);
+
+        TreeSet<BadArrayAccess> all = new TreeSet<BadArrayAccess>(reports);
+        // the changed classes were analyzed whole
+        Set<MethodSignature> analyzed = new HashSet<MethodSignature>();
+        for( String name : cache.getChanged() ) {
+            ClassNode cn = Repository.lookupClass(name);
+            for( MethodNode m : cn.methods ) {
+                if ( (m.access & Opcodes.ACC_ABSTRACT) == 0 )
+                    analyzed.add(new MethodSignature(m,cn));
+            }
+        }
+        Set<MethodSignature> next = new LinkedHashSet<MethodSignature>();
+        for( MethodSignature ms : stale ) {
+            if ( ! analyzed.contains(ms) )
+                next.add(ms);
+        }
+        List<MethodSignature> last = new ArrayList<MethodSignature>(analyzed);
+        int rounds = 0;
+        int again = 0;
+        while( true ) {
+            for( MethodSignature ms : last ) {
+                if ( ! callers.containsKey(ms) )
+                    continue;
+                for( MethodSignature caller : callers.get(ms) ) {
+                    if ( ! analyzed.contains(caller) )
+                        next.add(caller);
+                }
+            }
+            if ( next.isEmpty() )
+                break;
+            rounds++;
+            Analysis a = result.fork();
+            for( MethodSignature ms : next ) {
+                summaries.remove(ms);
+                for( Iterator<BadArrayAccess> i = all.iterator(); i.hasNext(); ) {
+                    BadArrayAccess ba = i.next();
+                    if ( ms.getOwner().equals(ba.getOwner())
+                            && ms.getName().equals(ba.getMethod())
+                            && ms.getDesc().equals(ba.getDesc()) )
+                        i.remove();
+                }
+            }
+            again += next.size();
+            for( MethodSignature ms : next ) {
+                analyzed.add(ms);
+                ClassNode cn = Repository.lookupClass(ms.getOwner());
+                for( MethodNode m : cn.methods ) {
+                    if ( m.name.equals(ms.getName()) && m.desc.equals(ms.getDesc())
+                            && (m.access & Opcodes.ACC_ABSTRACT) == 0 )
+                        a.analyzeMethodOnce(m,cn);
+                }
+            }
+            last = new ArrayList<MethodSignature>(next);
+            next.clear();
+            all.addAll(a.getReports());
+        }
+        cache.analyzed(again,rounds);
+
+        Set<String> changed = new HashSet<String>(cache.getChanged());
+        Set<String> store = new LinkedHashSet<String>(cache.getChanged());
+        for( MethodSignature ms : cache.getMethods() ) {
+            if ( analyzed.contains(ms) )
+                store.add(ms.getOwner());
+            else if ( ! changed.contains(ms.getOwner()) )
+                all.addAll(cache.getReports(ms));
+        }
+        Map<MethodSignature,Variable> done = summaries.getCompleted();
+        try {
+            for( String s : store ) {
+                cache.store(Repository.lookupClass(s),this,done,all);
+            }
+        } catch ( IOException e ) {
+            System.err.println("Can't save the cache: "+e.getMessage());
+        }
+        return new Vector<BadArrayAccess>(all);
+    }
+
+    // Analyzes the methods of the classes on a fork-join pool, each worker
+    // thread with its own Analysis, and merges their reports sorted. The
+    // methods expected to take longer are started first: only the task of
+    // a method computes its summary, a caller analyzes it apart with its
+    // arguments, so the order doesn't change the reports. A task is a
+    // class name and a method index, so the classes can be dropped from
+    // the Repository until their turn comes.
+    private Vector<BadArrayAccess> analyzeParallel( List<String> names )
+            throws ClassNotFoundException {
+        CostProfile costs = estimator(lookup(names));
+        final List<String> owners = new ArrayList<String>();
+        final List<Integer> methods = new ArrayList<Integer>();
+        List<Long> estimates = new ArrayList<Long>();
+        for( String name : names ) {
+            ClassNode cn = Repository.lookupClass(name);
+            for( int i = 0; i < cn.methods.size(); i++ ) {
+                share(cn.methods.get(i));
+                owners.add(name);
+                methods.add(i);
+                estimates.add(costs.estimate(cn,cn.methods.get(i)));
+            }
+        }
+        final long[] cost = new long[methods.size()];
+        Integer[] order = new Integer[methods.size()];
+        for( int i = 0; i < order.length; i++ ) {
+            cost[i] = estimates.get(i);
+            order[i] = i;
+        }
+        // longest first, in the order of the classes when equal
+        Arrays.sort(order,new Comparator<Integer>() {
+            public int compare( Integer a, Integer b ) {
+                return Long.compare(cost[b],cost[a]);
+            }
+        });
+        final Integer[] tasks = order;
+
+        final List<Analysis> analyses =
+                Collections.synchronizedList(new ArrayList<Analysis>());
+        final ThreadLocal<Analysis> local = perThread(analyses);
+        final Map<String,AtomicInteger> pending = pending(names,owners);
+        final AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+        for( int t = 0; t < threads; t++ ) {
+            workers.add(new Callable<Void>() {
+                public Void call() throws ClassNotFoundException {
+                    Analysis a = local.get();
+                    int i;
+                    while( (i = next.getAndIncrement()) < tasks.length ) {
+                        ClassNode cn = Repository.lookupClass(owners.get(tasks[i]));
+                        a.analyzeMethodOnce(cn.methods.get(methods.get(tasks[i]))
+                                           ,cn);
+                        methodDone(pending,cn.name);
+                    }
+                    return null;
+                }
+            });
+        }
+        run(workers);
+        return merge(analyses);
+    }
+
+    // Analyzes the components of the call graph once all their callees
+    // are done, the ready ones in parallel and the longest first.
+    private Vector<BadArrayAccess> analyzeBottomUp( List<String> names )
+            throws ClassNotFoundException {
+        CallGraph graph = new CallGraph(this,names);
+        Set<ClassNode> classes = new LinkedHashSet<ClassNode>();
+        for( CallGraph.Node n : graph.getNodes() ) {
+            share(n.getMethod());
+            classes.add(n.getOwner());
+        }
+        CostProfile costs = estimator(classes);
+        List<String> owners = new ArrayList<String>();
+        for( CallGraph.Node n : graph.getNodes() ) {
+            owners.add(n.getOwner().name);
+        }
+        final Map<String,AtomicInteger> pending = pending(names,owners);
+
+        List<Analysis> analyses =
+                Collections.synchronizedList(new ArrayList<Analysis>());
+        final ThreadLocal<Analysis> local = perThread(analyses);
+        final ComponentScheduler scheduler =
+                new ComponentScheduler(graph.getComponents(),costs);
+        List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+        for( int t = 0; t < threads; t++ ) {
+            workers.add(new Callable<Void>() {
+                public Void call() throws InterruptedException {
+                    CallGraph.Component c;
+                    while( (c = scheduler.take()) != null ) {
+                        try {
+                            local.get().analyzeComponent(c);
+                        } catch ( RuntimeException e ) {
+                            scheduler.fail();
+                            throw e;
+                        } catch ( Error e ) {
+                            scheduler.fail();
+                            throw e;
+                        }
+                        for( CallGraph.Node n : c.getNodes() )
+                            methodDone(pending,n.getOwner().name);
+                        scheduler.done(c);
+                    }
+                    return null;
+                }
+            });
+        }
+        run(workers);
+        return merge(analyses);
+    }
+
+    // Hands out the components whose callees are done, the longest
+    // expected first.
+    private static class ComponentScheduler {
+        private Map<CallGraph.Component,Long> cost =
+                new HashMap<CallGraph.Component,Long>();
+        private Map<CallGraph.Component,Integer> index =
+                new HashMap<CallGraph.Component,Integer>();
+        private PriorityQueue<CallGraph.Component> ready;
+        private int remaining;
+        private boolean failed = false;
+
+        ComponentScheduler( List<CallGraph.Component> components
+                          , CostProfile costs ) {
+            for( CallGraph.Component c : components ) {
+                long t = 0;
+                for( CallGraph.Node n : c.getNodes() ) {
+                    t += costs.estimate(n.getOwner(),n.getMethod());
+                }
+                cost.put(c,t);
+                index.put(c,index.size());
+            }
+            ready = new PriorityQueue<CallGraph.Component>(
+                    Math.max(1,components.size())
+                    ,new Comparator<CallGraph.Component>() {
+                public int compare( CallGraph.Component a
+                                  , CallGraph.Component b ) {
+                    int r = Long.compare(cost.get(b),cost.get(a));
+                    return r != 0 ? r
+                           : Integer.compare(index.get(a),index.get(b));
+                }
+            });
+            remaining = components.size();
+            for( CallGraph.Component c : components ) {
+                if ( c.isReady() )
+                    ready.add(c);
+            }
+        }
+
+        // next component to analyze, null when there are no more
+        synchronized CallGraph.Component take() throws InterruptedException {
+            while( ready.isEmpty() && remaining > 0 && ! failed ) {
+                wait();
+            }
+            return failed ? null : ready.poll();
+        }
+
+        synchronized void done( CallGraph.Component c ) {
+            remaining--;
+            for( CallGraph.Component caller : c.getCallers() ) {
+                if ( caller.calleeDone() )
+                    ready.add(caller);
+            }
+            notifyAll();
+        }
+
+        synchronized void fail() {
+            failed = true;
+            notifyAll();
+        }
+    }
+
+    // the classes of names, looked up one at a time while iterating
+    private static Iterable<ClassNode> lookup( final List<String> names ) {
+        return new Iterable<ClassNode>() {
+            public Iterator<ClassNode> iterator() {
+                final Iterator<String> i = names.iterator();
+                return new Iterator<ClassNode>() {
+                    public boolean hasNext() {
+                        return i.hasNext();
+                    }
+
+                    public ClassNode next() {
+                        ClassNode cn = Repository.findClass(i.next());
+                        return cn != null ? cn : new ClassNode();
+                    }
+                };
+            }
+        };
+    }
+
+    // the profile, or an estimate from the size of the methods
+    private CostProfile estimator( Iterable<ClassNode> classes ) {
+        CostProfile costs = profile != null ? profile : new CostProfile();
+        costs.calibrate(classes);
+        return costs;
+    }
+
+    // runs the workers on a pool of threads, throws what they throw
+    private void run( List<Callable<Void>> workers ) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for( Future<Void> f : pool.invokeAll(workers) ) {
+                try {
+                    f.get();
+                } catch ( ExecutionException e ) {
+                    if ( e.getCause() instanceof RuntimeException )
+                        throw (RuntimeException)e.getCause();
+                    if ( e.getCause() instanceof Error )
+                        throw (Error)e.getCause();
+                    throw new RuntimeException(e.getCause());
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // InsnList indexes its nodes lazily, do it before sharing them
+    private static void share( MethodNode m ) {
+        if ( m.instructions.size() > 0 )
+            m.instructions.get(0);
+    }
+
+    // an Analysis forked for every thread, added to analyses
+    private ThreadLocal<Analysis> perThread( final List<Analysis> analyses ) {
+        return new ThreadLocal<Analysis>() {
+            protected Analysis initialValue() {
+                Analysis a = result.fork();
+                analyses.add(a);
+                if ( checkpoint != null )
+                    checkpoint.addReports(a.getReports());
+                return a;
+            }
+        };
+    }
+
+    // The methods of every class of names left to analyze, owners having
+    // a class for every method; the classes without any are done already.
+    private Map<String,AtomicInteger> pending( List<String> names
+                                             , List<String> owners ) {
+        Map<String,AtomicInteger> pending = new HashMap<String,AtomicInteger>();
+        if ( checkpoint == null )
+            return pending;
+        for( String s : names ) {
+            pending.put(s,new AtomicInteger());
+        }
+        for( String s : owners ) {
+            AtomicInteger n = pending.get(s);
+            if ( n != null )
+                n.incrementAndGet();
+        }
+        for( Map.Entry<String,AtomicInteger> e : pending.entrySet() ) {
+            if ( e.getValue().get() == 0 )
+                checkpoint.done(e.getKey());
+        }
+        return pending;
+    }
+
+    // one more method of owner analyzed: tells the checkpoint if it was
+    // the last one
+    private void methodDone( Map<String,AtomicInteger> pending, String owner ) {
+        AtomicInteger n = pending.get(owner);
+        if ( n != null && n.decrementAndGet() == 0 )
+            checkpoint.done(owner);
+    }
+
+    // the reports of the analyses, sorted
+    private static Vector<BadArrayAccess> merge( List<Analysis> analyses ) {
+        TreeSet<BadArrayAccess> merged = new TreeSet<BadArrayAccess>();
+        for( Analysis a : analyses ) {
+            merged.addAll(a.getReports());
+        }
+        return new Vector<BadArrayAccess>(merged);
     }
 
     // A class is not analyzable if it is not in the repository
     public boolean isAnalyzable( String class_name ) {
-        return class_names.contains(class_name);
+        return analyzable.contains(class_name);
     }
 }
@@ -1,14 +1,25 @@
 package staticAnalyzer;
 
-public class BadArrayAccess {
+public class BadArrayAccess implements Comparable<BadArrayAccess> {
     private int line;
     private String file;
     private String method;
+    // class and descriptor of the method, not part of the identity of
+    // the report
+    private String owner;
+    private String desc;
 
     protected BadArrayAccess( String file, String method, int line ) {
+        this(file,method,line,null,null);
+    }
+
+    protected BadArrayAccess( String file, String method, int line
+                            , String owner, String desc ) {
         this.line = line;
         this.file = file;
         this.method = method;
+        this.owner = owner;
+        this.desc = desc;
     }
 
     public String getFile() {
@@ -23,10 +34,31 @@ public class BadArrayAccess {
         return line;
     }
 
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
     public String toString() {
         return file+":"+line+" in "+method;
     }
 
+    // by file, line and method, the order of the merged reports
+    public int compareTo( BadArrayAccess ba ) {
+        int c = String.valueOf(file).compareTo(String.valueOf(ba.file));
+        if ( c == 0 ) c = Integer.compare(line,ba.line);
+        if ( c == 0 ) c = method.compareTo(ba.method);
+        return c;
+    }
+
+    public int hashCode() {
+        return String.valueOf(file).hashCode()*31*31
+               + method.hashCode()*31 + line;
+    }
+
     public boolean equals( Object obj ) {
         if( obj instanceof BadArrayAccess ) {
             BadArrayAccess ba = (BadArrayAccess)obj;
@@ -0,0 +1,143 @@
+package staticAnalyzer;
+
+import java.util.Arrays;
+
+// Set of local slots (the index of a Variable) stored one bit per slot, so
+// that join and propagation of the safe/edge bounds are done a word at
+// a time. A set is never changed once built, so it is shared freely
+// between abstract values; the operations return a new set (or the same
+// one if nothing changes) and null stands for the empty set.
+final class BoundSet {
+    private final long[] words;
+    private final int hash;
+
+    private BoundSet( long[] words ) {
+        int n = words.length;
+        while( n > 0 && words[n-1] == 0 ) n--;
+        this.words = n == words.length ? words : Arrays.copyOf(words,n);
+        this.hash = Arrays.hashCode(this.words);
+    }
+
+    private static BoundSet of( long[] words ) {
+        for( long w : words ) {
+            if ( w != 0 )
+                return new BoundSet(words);
+        }
+        return null;
+    }
+
+    public static boolean contains( BoundSet b, int slot ) {
+        if ( b == null )
+            return false;
+        int w = slot >>> 6;
+        return w < b.words.length && (b.words[w] & (1L << slot)) != 0;
+    }
+
+    // b plus slot
+    public static BoundSet with( BoundSet b, int slot ) {
+        if ( contains(b,slot) )
+            return b;
+        int w = slot >>> 6;
+        long[] words = b == null ? new long[w+1]
+                     : Arrays.copyOf(b.words,Math.max(w+1,b.words.length));
+        words[w] |= 1L << slot;
+        return new BoundSet(words);
+    }
+
+    // b without slot
+    public static BoundSet without( BoundSet b, int slot ) {
+        if ( ! contains(b,slot) )
+            return b;
+        long[] words = b.words.clone();
+        words[slot >>> 6] &= ~(1L << slot);
+        return of(words);
+    }
+
+    public static BoundSet union( BoundSet a, BoundSet b ) {
+        if ( a == null || a == b )
+            return b;
+        if ( b == null )
+            return a;
+        long[] words = Arrays.copyOf(a.words
+                                    ,Math.max(a.words.length,b.words.length));
+        boolean changed = false;
+        for( int i = 0; i < b.words.length; i++ ) {
+            long w = words[i] | b.words[i];
+            if ( w != words[i] ) {
+                words[i] = w;
+                changed = true;
+            }
+        }
+        return changed ? new BoundSet(words) : a;
+    }
+
+    public static BoundSet intersection( BoundSet a, BoundSet b ) {
+        if ( a == null || b == null )
+            return null;
+        if ( a == b )
+            return a;
+        long[] words = new long[Math.min(a.words.length,b.words.length)];
+        boolean changed = words.length != a.words.length;
+        for( int i = 0; i < words.length; i++ ) {
+            words[i] = a.words[i] & b.words[i];
+            if ( words[i] != a.words[i] )
+                changed = true;
+        }
+        return changed ? of(words) : a;
+    }
+
+    // translates the slots through map (map[slot] < 0 drops the slot)
+    public static BoundSet remap( BoundSet b, int[] map ) {
+        if ( b == null )
+            return null;
+        long[] words = new long[1];
+        for( int i = 0; i < b.words.length; i++ ) {
+            long w = b.words[i];
+            while( w != 0 ) {
+                int slot = (i << 6) + Long.numberOfTrailingZeros(w);
+                w &= w - 1;
+                if ( slot < map.length && map[slot] >= 0 ) {
+                    int to = map[slot] >>> 6;
+                    if ( to >= words.length )
+                        words = Arrays.copyOf(words,to+1);
+                    words[to] |= 1L << map[slot];
+                }
+            }
+        }
+        return of(words);
+    }
+
+    // the slots as words of 64 bits, and back, to save them
+    public static long[] toWords( BoundSet b ) {
+        return b == null ? new long[0] : b.words.clone();
+    }
+
+    public static BoundSet fromWords( long[] words ) {
+        return of(words.clone());
+    }
+
+    public boolean equals( Object o ) {
+        if ( this == o )
+            return true;
+        if ( ! (o instanceof BoundSet) )
+            return false;
+        BoundSet b = (BoundSet)o;
+        return hash == b.hash && Arrays.equals(words,b.words);
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for( int i = 0; i < words.length; i++ ) {
+            long w = words[i];
+            while( w != 0 ) {
+                s.append(' ').append((i << 6) + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+        return s.toString();
+    }
+}
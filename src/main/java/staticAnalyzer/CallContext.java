@@ -0,0 +1,49 @@
+package staticAnalyzer;
+
+import java.util.*;
+
+// A call by callee and abstract arguments, already in the slots of the
+// callee: two calls with the same values and the same aliasing between
+// the arguments get the same result, so it is analyzed once.
+class CallContext {
+    private MethodSignature ms;
+    private AbstractValue[] values;
+    // first argument that is the same variable, for each argument
+    private int[] aliases;
+    private int hash;
+
+    public CallContext( MethodSignature ms, List<Variable> parameters ) {
+        this.ms = ms;
+        this.values = new AbstractValue[parameters.size()];
+        this.aliases = new int[parameters.size()];
+        for( int i = 0; i < values.length; i++ ) {
+            Variable v = parameters.get(i);
+            values[i] = v.getValue();
+            int first = i;
+            for( int k = 0; k < i; k++ ) {
+                if ( parameters.get(k) == v ) {
+                    first = k;
+                    break;
+                }
+            }
+            aliases[i] = first;
+        }
+        this.hash = (ms.hashCode()*31 + Arrays.hashCode(values))*31
+                  + Arrays.hashCode(aliases);
+    }
+
+    public boolean equals( Object o ) {
+        if ( ! (o instanceof CallContext) )
+            return false;
+
+        CallContext oc = (CallContext)o;
+
+        return hash == oc.hash && ms.equals(oc.ms)
+            && Arrays.equals(values,oc.values)
+            && Arrays.equals(aliases,oc.aliases);
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+}
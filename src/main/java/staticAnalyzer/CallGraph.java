@@ -0,0 +1,218 @@
+package staticAnalyzer;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+// Calls between the methods of the classes to analyze, resolved as
+// Analysis.invoke does, and its strongly connected components. The
+// components are listed callees first, so analyzing them in this order
+// every summary a method needs is ready before it is analyzed.
+class CallGraph {
+
+    static class Node {
+        private ClassNode owner;
+        private MethodNode method;
+        private List<Node> callees = new ArrayList<Node>();
+        private Component component;
+        private int index = -1; // visit order, -1 if not visited yet
+        private int low;
+        private boolean onStack;
+
+        private Node( ClassNode owner, MethodNode method ) {
+            this.owner = owner;
+            this.method = method;
+        }
+
+        public ClassNode getOwner() {
+            return owner;
+        }
+
+        public MethodNode getMethod() {
+            return method;
+        }
+
+        public List<Node> getCallees() {
+            return callees;
+        }
+    }
+
+    static class Component {
+        private List<Node> nodes = new ArrayList<Node>();
+        private Set<Component> callers = new LinkedHashSet<Component>();
+        private boolean recursive = false;
+        // callee components not analyzed yet
+        private AtomicInteger pending = new AtomicInteger();
+
+        public List<Node> getNodes() {
+            return nodes;
+        }
+
+        // components calling a method of this one
+        public Set<Component> getCallers() {
+            return callers;
+        }
+
+        // true if its methods call each other (or a method calls itself)
+        public boolean isRecursive() {
+            return recursive;
+        }
+
+        // one callee is done, true if it was the last one
+        public boolean calleeDone() {
+            return pending.decrementAndGet() == 0;
+        }
+
+        public boolean isReady() {
+            return pending.get() == 0;
+        }
+    }
+
+    // by signature: a class dropped from the Repository is parsed again
+    // with new MethodNodes
+    private Map<MethodSignature,Node> nodes = new HashMap<MethodSignature,Node>();
+    private List<Node> order = new ArrayList<Node>();
+    private List<Component> components = new ArrayList<Component>();
+
+    // Tarjan's state
+    private int visits = 0;
+    private Deque<Node> stack = new ArrayDeque<Node>();
+
+    public CallGraph( Analyzer analyzer, Collection<String> class_names )
+            throws ClassNotFoundException {
+        Deque<Node> work = new ArrayDeque<Node>();
+        for( String name : class_names ) {
+            ClassNode cn = Repository.lookupClass(name);
+            for( MethodNode m : cn.methods ) {
+                if ( (m.access & Opcodes.ACC_ABSTRACT) == 0 )
+                    work.add(node(cn,m));
+            }
+        }
+        // the callees, and theirs if inherited from other classes
+        while( ! work.isEmpty() ) {
+            Node n = work.poll();
+            for( AbstractInsnNode insn = n.method.instructions.getFirst()
+                    ; insn != null; insn = insn.getNext() ) {
+                if ( ! (insn instanceof MethodInsnNode) )
+                    continue;
+                MethodInsnNode mi = (MethodInsnNode)insn;
+                if ( ! analyzer.isAnalyzable(mi.owner) )
+                    continue;
+                Node callee = resolve(mi);
+                if ( callee == null )
+                    continue;
+                MethodSignature ms = new MethodSignature(callee.method,callee.owner);
+                if ( ! nodes.containsKey(ms) ) {
+                    nodes.put(ms,callee);
+                    order.add(callee);
+                    work.add(callee);
+                }
+                callee = nodes.get(ms);
+                if ( ! n.callees.contains(callee) )
+                    n.callees.add(callee);
+            }
+        }
+
+        for( Node n : order ) {
+            if ( n.index < 0 )
+                connect(n);
+        }
+        for( Component c : components ) {
+            Set<Component> callees = new HashSet<Component>();
+            for( Node n : c.nodes ) {
+                for( Node callee : n.callees ) {
+                    if ( callee.component != c && callees.add(callee.component) )
+                        callee.component.callers.add(c);
+                }
+            }
+            c.pending.set(callees.size());
+        }
+    }
+
+    private Node node( ClassNode cn, MethodNode m ) {
+        MethodSignature ms = new MethodSignature(m,cn);
+        Node n = nodes.get(ms);
+        if ( n == null ) {
+            n = new Node(cn,m);
+            nodes.put(ms,n);
+            order.add(n);
+        }
+        return n;
+    }
+
+    // method run by the call, looked up going up in the class tree
+    private static Node resolve( MethodInsnNode mi ) {
+        ClassNode cl = Repository.findClass(mi.owner);
+        while( cl != null ) {
+            for( MethodNode m : cl.methods ) {
+                if ( m.name.equals(mi.name) && m.desc.equals(mi.desc) ) {
+                    if ( (m.access & Opcodes.ACC_ABSTRACT) != 0 )
+                        break;
+                    return new Node(cl,m);
+                }
+            }
+            cl = cl.superName != null
+               ? Repository.findClass(cl.superName) : null;
+        }
+        return null;
+    }
+
+    // Tarjan's algorithm from root, without recursion: path holds the
+    // nodes being visited and next the callee each of them is at.
+    private void connect( Node root ) {
+        Deque<Node> path = new ArrayDeque<Node>();
+        Deque<Integer> next = new ArrayDeque<Integer>();
+        visit(root);
+        path.push(root);
+        next.push(0);
+        while( ! path.isEmpty() ) {
+            Node n = path.peek();
+            int i = next.pop();
+            if ( i < n.callees.size() ) {
+                next.push(i+1);
+                Node c = n.callees.get(i);
+                if ( c.index < 0 ) {
+                    visit(c);
+                    path.push(c);
+                    next.push(0);
+                } else if ( c.onStack ) {
+                    n.low = Math.min(n.low,c.index);
+                }
+                continue;
+            }
+            path.pop();
+            if ( n.low == n.index ) {
+                Component c = new Component();
+                Node w;
+                do {
+                    w = stack.pop();
+                    w.onStack = false;
+                    w.component = c;
+                    c.nodes.add(w);
+                } while( w != n );
+                c.recursive = c.nodes.size() > 1 || n.callees.contains(n);
+                components.add(c);
+            }
+            if ( ! path.isEmpty() ) {
+                Node p = path.peek();
+                p.low = Math.min(p.low,n.low);
+            }
+        }
+    }
+
+    private void visit( Node n ) {
+        n.index = n.low = visits++;
+        stack.push(n);
+        n.onStack = true;
+    }
+
+    // the components, callees before their callers
+    public List<Component> getComponents() {
+        return components;
+    }
+
+    public Collection<Node> getNodes() {
+        return order;
+    }
+}
@@ -0,0 +1,204 @@
+package staticAnalyzer;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// The classes analyzed so far, the summaries and the reports of those
+// classes, saved to a file every so often by a thread of its own, so a run
+// that dies can go on from there. The analysis threads only mark the
+// classes done; the rest is copied when saving. The file is
+//   magic version
+//   classes: count (name)*
+//   summaries: count (owner name desc variable)*
+//   reports: count ([file] method line owner desc)*
+class Checkpoint {
+
+    private static final int MAGIC = 0x41414350;
+
+    private File file;
+    private String version;
+    private SummaryCache summaries;
+    private Set<String> done = Collections.synchronizedSet(new LinkedHashSet<String>());
+    // where the analysis threads add their reports
+    private List<Vector<BadArrayAccess>> sources =
+            Collections.synchronizedList(new ArrayList<Vector<BadArrayAccess>>());
+    // the reports read back, of classes done
+    private List<BadArrayAccess> resumed = new ArrayList<BadArrayAccess>();
+    private ScheduledExecutorService timer = null;
+    private int saves = 0;
+
+    public Checkpoint( File file, String version, SummaryCache summaries ) {
+        this.file = file;
+        this.version = version;
+        this.summaries = summaries;
+    }
+
+    // Reads the checkpoint back: the classes done and their reports, and
+    // the summaries, added to the cache. False if there is none, or it was
+    // saved with other settings.
+    public boolean resume() throws IOException {
+        if ( ! file.exists() )
+            return false;
+        Set<String> classes = new LinkedHashSet<String>();
+        Map<MethodSignature,Variable> found = new HashMap<MethodSignature,Variable>();
+        List<BadArrayAccess> reports = new ArrayList<BadArrayAccess>();
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if ( in.readInt() != MAGIC || ! in.readUTF().equals(version) )
+                return false;
+            for( int n = in.readInt(); n > 0; n-- ) {
+                classes.add(in.readUTF());
+            }
+            for( int n = in.readInt(); n > 0; n-- ) {
+                MethodSignature ms = new MethodSignature(in.readUTF()
+                                            ,in.readUTF(),in.readUTF());
+                found.put(ms,AnalysisCache.readVariable(in));
+            }
+            for( int n = in.readInt(); n > 0; n-- ) {
+                String f = in.readBoolean() ? in.readUTF() : null;
+                reports.add(new BadArrayAccess(f,in.readUTF(),in.readInt()
+                                              ,in.readUTF(),in.readUTF()));
+            }
+        } catch ( EOFException e ) {
+            return false; // truncated, started over
+        } catch ( IndexOutOfBoundsException e ) {
+            return false; // bad enum ordinal
+        } finally {
+            in.close();
+        }
+        done.addAll(classes);
+        resumed.addAll(reports);
+        for( Map.Entry<MethodSignature,Variable> e : found.entrySet() ) {
+            summaries.put(e.getKey(),e.getValue());
+        }
+        return true;
+    }
+
+    // the classes done, by this run or the one resumed
+    public boolean isDone( String name ) {
+        return done.contains(name);
+    }
+
+    public List<BadArrayAccess> getResumed() {
+        return resumed;
+    }
+
+    // the reports of an analysis, to save the ones of the classes done
+    public void addReports( Vector<BadArrayAccess> reports ) {
+        sources.add(reports);
+    }
+
+    // all the methods of name were analyzed
+    public void done( String name ) {
+        done.add(name);
+    }
+
+    // saves every seconds, until stop
+    public void start( long seconds ) {
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread(r,"checkpoint");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    save();
+                } catch ( IOException e ) {
+                    System.err.println("Can't save the checkpoint: "+e.getMessage());
+                }
+            }
+        },seconds,seconds,TimeUnit.SECONDS);
+    }
+
+    // stops saving, and saves the last time
+    public void stop() throws IOException {
+        if ( timer != null ) {
+            timer.shutdown();
+            try {
+                timer.awaitTermination(1,TimeUnit.MINUTES);
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        save();
+    }
+
+    // written to a temporary file and renamed, so a crash while saving
+    // leaves the last one
+    private synchronized void save() throws IOException {
+        Set<String> classes;
+        synchronized( done ) {
+            classes = new LinkedHashSet<String>(done);
+        }
+        // only the ones of the classes done: a method with a summary is not
+        // analyzed again, and its reports would be lost
+        Map<MethodSignature,Variable> done_summaries = summaries.getCompleted();
+        for( Iterator<MethodSignature> i = done_summaries.keySet().iterator()
+                ; i.hasNext(); ) {
+            if ( ! classes.contains(i.next().getOwner()) )
+                i.remove();
+        }
+        TreeSet<BadArrayAccess> reports = new TreeSet<BadArrayAccess>(resumed);
+        List<Vector<BadArrayAccess>> all;
+        synchronized( sources ) {
+            all = new ArrayList<Vector<BadArrayAccess>>(sources);
+        }
+        for( Vector<BadArrayAccess> v : all ) {
+            for( BadArrayAccess ba : new ArrayList<BadArrayAccess>(v) ) {
+                if ( classes.contains(ba.getOwner()) )
+                    reports.add(ba);
+            }
+        }
+
+        File tmp = new File(file.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(version);
+            out.writeInt(classes.size());
+            for( String s : classes ) {
+                out.writeUTF(s);
+            }
+            out.writeInt(done_summaries.size());
+            for( Map.Entry<MethodSignature,Variable> e : done_summaries.entrySet() ) {
+                out.writeUTF(e.getKey().getOwner());
+                out.writeUTF(e.getKey().getName());
+                out.writeUTF(e.getKey().getDesc());
+                AnalysisCache.writeVariable(out,e.getValue());
+            }
+            out.writeInt(reports.size());
+            for( BadArrayAccess ba : reports ) {
+                out.writeBoolean(ba.getFile() != null);
+                if ( ba.getFile() != null )
+                    out.writeUTF(ba.getFile());
+                out.writeUTF(ba.getMethod());
+                out.writeInt(ba.getLine());
+                out.writeUTF(ba.getOwner());
+                out.writeUTF(ba.getDesc());
+            }
+        } finally {
+            out.close();
+        }
+        if ( ! tmp.renameTo(file) ) {
+            file.delete();
+            if ( ! tmp.renameTo(file) )
+                throw new IOException("Can't write "+file);
+        }
+        saves++;
+    }
+
+    public String toString() {
+        return "Checkpoint: "+done.size()+" classes done, "+resumed.size()
+               +" reports resumed, "+saves+" saves";
+    }
+}
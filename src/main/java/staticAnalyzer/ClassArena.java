@@ -0,0 +1,95 @@
+package staticAnalyzer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Class files kept out of the heap, in a temporary file mapped in memory
+// a chunk at a time. The files are only appended: a name maps to where
+// its bytes are, and they are copied out again to parse the class.
+class ClassArena {
+    private static final int CHUNK = 64 << 20;
+
+    private static class Slot {
+        final int chunk, offset, length;
+
+        Slot( int chunk, int offset, int length ) {
+            this.chunk = chunk;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private Path file;
+    private FileChannel channel;
+    private List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+    private ConcurrentHashMap<String,Slot> slots = new ConcurrentHashMap<String,Slot>();
+    private long mapped = 0; // bytes of the file mapped so far
+    private int used = 0;    // bytes used in the last chunk
+
+    ClassArena() throws IOException {
+        file = Files.createTempFile("classes",".arena");
+        file.toFile().deleteOnExit();
+        channel = FileChannel.open(file,StandardOpenOption.READ
+                                  ,StandardOpenOption.WRITE);
+    }
+
+    boolean contains( String name ) {
+        return slots.containsKey(name);
+    }
+
+    // stores the class file of name, unless it has one already
+    synchronized void put( String name, byte[] bytes ) throws IOException {
+        if ( slots.containsKey(name) )
+            return;
+        MappedByteBuffer last = chunks.isEmpty() ? null
+                                : chunks.get(chunks.size()-1);
+        if ( last == null || used + bytes.length > last.capacity() ) {
+            int size = Math.max(CHUNK,bytes.length);
+            last = channel.map(FileChannel.MapMode.READ_WRITE,mapped,size);
+            chunks.add(last);
+            mapped += size;
+            used = 0;
+        }
+        last.put(used,bytes);
+        slots.put(name,new Slot(chunks.size()-1,used,bytes.length));
+        used += bytes.length;
+    }
+
+    // forgets the class file of name, its space is not reused
+    synchronized void remove( String name ) {
+        slots.remove(name);
+    }
+
+    // the class file of name, null if not stored
+    byte[] get( String name ) {
+        Slot s = slots.get(name);
+        if ( s == null )
+            return null;
+        MappedByteBuffer chunk;
+        synchronized( this ) {
+            chunk = chunks.get(s.chunk);
+        }
+        byte[] bytes = new byte[s.length];
+        chunk.get(s.offset,bytes);
+        return bytes;
+    }
+
+    // bytes stored
+    long size() {
+        long n = 0;
+        for( Slot s : slots.values() )
+            n += s.length;
+        return n;
+    }
+
+    void close() throws IOException {
+        slots.clear();
+        chunks.clear();
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+}
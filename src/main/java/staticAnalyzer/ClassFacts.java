@@ -0,0 +1,78 @@
+package staticAnalyzer;
+
+import java.util.*;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+// What the site index needs of a class, taken from its ClassNode: the
+// superclass and, for every method, its access, the number of its array
+// access sites and the methods it calls. It is small, and it stays valid
+// when the ClassNode is dropped.
+class ClassFacts {
+
+    static class Method {
+        private int access;
+        private int sites;
+        // the calls as written, owner name and descriptor
+        private List<MethodSignature> calls;
+
+        public int getAccess() {
+            return access;
+        }
+
+        public int getSites() {
+            return sites;
+        }
+
+        public List<MethodSignature> getCalls() {
+            return calls;
+        }
+    }
+
+    private String superName;
+    // by name and descriptor, in the order of the class
+    private Map<String,Method> methods = new LinkedHashMap<String,Method>();
+    private int sites = 0;
+
+    public ClassFacts( ClassNode cn ) {
+        this.superName = cn.superName;
+        for( MethodNode mn : cn.methods ) {
+            Method m = new Method();
+            m.access = mn.access;
+            List<MethodSignature> calls = new ArrayList<MethodSignature>();
+            for( AbstractInsnNode node = mn.instructions.getFirst()
+                    ; node != null; node = node.getNext() ) {
+                if ( isSite(node.getOpcode()) ) {
+                    m.sites++;
+                } else if ( node instanceof MethodInsnNode ) {
+                    MethodInsnNode mi = (MethodInsnNode)node;
+                    calls.add(new MethodSignature(mi.owner,mi.name,mi.desc));
+                }
+            }
+            m.calls = calls.isEmpty()
+                    ? Collections.<MethodSignature>emptyList() : calls;
+            methods.put(mn.name+mn.desc,m);
+            sites += m.sites;
+        }
+    }
+
+    protected static boolean isSite( int opcode ) {
+        return (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD)
+            || (opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE)
+            || opcode == Opcodes.ARRAYLENGTH;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    // the method name desc declared here, null if none
+    public Method getMethod( String name, String desc ) {
+        return methods.get(name+desc);
+    }
+
+    // the sites of all the methods
+    public int getSites() {
+        return sites;
+    }
+}
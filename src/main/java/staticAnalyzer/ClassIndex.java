@@ -0,0 +1,73 @@
+package staticAnalyzer;
+
+import java.util.*;
+
+// Class files of a jar or of a directory by class name. Their path is
+// relative to the root and '/' separated; the classes of a Spring Boot
+// jar are under BOOT-INF/classes. In a multi-release root the version
+// closest to the target release wins over the base one.
+class ClassIndex<E> {
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final String BOOT = "BOOT-INF/classes/";
+
+    private Map<String,E> entries = new LinkedHashMap<String,E>();
+    private Map<String,Integer> versions = new HashMap<String,Integer>();
+    private boolean versioned;
+    private int release;
+
+    ClassIndex( boolean versioned, int release ) {
+        this.versioned = versioned;
+        this.release = release;
+    }
+
+    // adds the file at path, if it is a class to analyze: module-info and
+    // package-info describe a module or a package, and have no code
+    void add( String path, E entry ) {
+        if ( ! path.endsWith(".class") || path.endsWith("module-info.class")
+                || path.endsWith("package-info.class") )
+            return;
+        int version = 0;
+        if ( path.startsWith(VERSIONS) ) {
+            int slash = path.indexOf('/',VERSIONS.length());
+            if ( ! versioned || slash < 0 )
+                return;
+            try {
+                version = Integer.parseInt(path.substring(VERSIONS.length(),slash));
+            } catch ( NumberFormatException e ) {
+                return;
+            }
+            if ( version > release )
+                return;
+            path = path.substring(slash+1);
+        } else if ( path.startsWith("META-INF/") ) {
+            return;
+        }
+        if ( path.startsWith(BOOT) ) {
+            path = path.substring(BOOT.length());
+        }
+        String name = path.substring(0,path.length()-6);
+        Integer old = versions.get(name);
+        if ( old == null || version > old ) {
+            entries.put(name,entry);
+            versions.put(name,version);
+        }
+    }
+
+    E get( String name ) {
+        return entries.get(name);
+    }
+
+    boolean contains( String name ) {
+        return entries.containsKey(name);
+    }
+
+    List<String> names() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    // true if the manifest says Multi-Release
+    static boolean isMultiRelease( java.util.jar.Manifest m ) {
+        return m != null && "true".equalsIgnoreCase(
+                m.getMainAttributes().getValue("Multi-Release"));
+    }
+}
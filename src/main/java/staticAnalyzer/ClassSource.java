@@ -0,0 +1,18 @@
+package staticAnalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// Where the bytes of some classes come from, by internal name. Closing it
+// releases the files it holds open.
+public interface ClassSource extends Closeable {
+
+    // names of the classes, in the order of the source
+    List<String> getClassNames();
+
+    boolean contains( String name );
+
+    // the class file of name, null if it is not here
+    byte[] read( String name ) throws IOException;
+}
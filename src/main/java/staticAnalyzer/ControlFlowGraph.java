@@ -0,0 +1,164 @@
+package staticAnalyzer;
+
+import java.util.*;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+// Basic blocks of a method, built once from its InsnList. Instructions
+// are referred by their index in the list, as in Analysis.
+class ControlFlowGraph {
+
+    static class BasicBlock {
+        private int id;
+        private int start;  // first instruction
+        private int end;    // last instruction, included
+        private int[] successors = new int[0];
+
+        private BasicBlock( int id, int start, int end ) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        // ids of the blocks control can flow to
+        public int[] getSuccessors() {
+            return successors;
+        }
+
+        public String toString() {
+            return "Block "+id+" ["+start+","+end+"] -> "
+                   +Arrays.toString(successors);
+        }
+    }
+
+    private InsnList il;
+    private BasicBlock[] blocks;
+    private int[] blockOf; // instruction index -> block id
+
+    public ControlFlowGraph( MethodNode m ) {
+        il = m.instructions;
+        int n = il.size();
+
+        // find the leaders
+        BitSet leaders = new BitSet(n);
+        leaders.set(0);
+        for( int i = 0; i < n; i++ ) {
+            AbstractInsnNode node = il.get(i);
+            if ( node instanceof JumpInsnNode ) {
+                leaders.set(il.indexOf(((JumpInsnNode)node).label));
+                leaders.set(i+1);
+            } else if ( node instanceof TableSwitchInsnNode ) {
+                TableSwitchInsnNode ts = (TableSwitchInsnNode)node;
+                leaders.set(il.indexOf(ts.dflt));
+                for( LabelNode l : ts.labels )
+                    leaders.set(il.indexOf(l));
+                leaders.set(i+1);
+            } else if ( node instanceof LookupSwitchInsnNode ) {
+                LookupSwitchInsnNode ls = (LookupSwitchInsnNode)node;
+                leaders.set(il.indexOf(ls.dflt));
+                for( LabelNode l : ls.labels )
+                    leaders.set(il.indexOf(l));
+                leaders.set(i+1);
+            } else if ( isExit(node.getOpcode()) ) {
+                leaders.set(i+1);
+            }
+        }
+        for( TryCatchBlockNode tcb : m.tryCatchBlocks ) {
+            leaders.set(il.indexOf(tcb.handler));
+        }
+        leaders.clear(n,leaders.length());
+
+        // cut the blocks
+        blocks = new BasicBlock[leaders.cardinality()];
+        blockOf = new int[n];
+        int id = 0;
+        for( int start = leaders.nextSetBit(0); start >= 0; id++ ) {
+            int next = leaders.nextSetBit(start+1);
+            int end = (next < 0 ? n : next) - 1;
+            blocks[id] = new BasicBlock(id,start,end);
+            Arrays.fill(blockOf,start,end+1,id);
+            start = next;
+        }
+
+        // link them
+        for( BasicBlock b : blocks ) {
+            b.successors = successors(m,b);
+        }
+    }
+
+    private int[] successors( MethodNode m, BasicBlock b ) {
+        AbstractInsnNode node = il.get(b.end);
+        int opcode = node.getOpcode();
+        int n = il.size();
+        Set<Integer> s = new LinkedHashSet<Integer>();
+
+        if ( node instanceof JumpInsnNode ) {
+            if ( opcode != Opcodes.GOTO && opcode != Opcodes.JSR
+                    && b.end+1 < n ) {
+                s.add(blockOf[b.end+1]);
+            }
+            s.add(blockOf[il.indexOf(((JumpInsnNode)node).label)]);
+        } else if ( node instanceof TableSwitchInsnNode ) {
+            TableSwitchInsnNode ts = (TableSwitchInsnNode)node;
+            s.add(blockOf[il.indexOf(ts.dflt)]);
+            for( LabelNode l : ts.labels )
+                s.add(blockOf[il.indexOf(l)]);
+        } else if ( node instanceof LookupSwitchInsnNode ) {
+            LookupSwitchInsnNode ls = (LookupSwitchInsnNode)node;
+            s.add(blockOf[il.indexOf(ls.dflt)]);
+            for( LabelNode l : ls.labels )
+                s.add(blockOf[il.indexOf(l)]);
+        } else if ( opcode == Opcodes.ATHROW ) {
+            // the handler actually taken depends on the thrown type
+            for( TryCatchBlockNode tcb : m.tryCatchBlocks ) {
+                if ( b.end >= il.indexOf(tcb.start)
+                        && b.end < il.indexOf(tcb.end) ) {
+                    s.add(blockOf[il.indexOf(tcb.handler)]);
+                }
+            }
+        } else if ( ! isExit(opcode) && b.end+1 < n ) {
+            s.add(blockOf[b.end+1]);
+        }
+
+        int[] r = new int[s.size()];
+        int i = 0;
+        for( int v : s ) {
+            r[i++] = v;
+        }
+        return r;
+    }
+
+    private static boolean isExit( int opcode ) {
+        return (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)
+            || opcode == Opcodes.ATHROW || opcode == Opcodes.RET;
+    }
+
+    public int size() {
+        return blocks.length;
+    }
+
+    public BasicBlock getBlock( int id ) {
+        return blocks[id];
+    }
+
+    // block starting at (or containing) the instruction index
+    public BasicBlock blockAt( int index ) {
+        return blocks[blockOf[index]];
+    }
+
+    public String toString() {
+        return Arrays.toString(blocks);
+    }
+}
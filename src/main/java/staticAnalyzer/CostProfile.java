@@ -0,0 +1,106 @@
+package staticAnalyzer;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+// Time spent analyzing every method, by class, name and descriptor. It is
+// read from the profile of a previous run to start the longest tasks
+// first, and saved with the times of this run. A line of the file is
+//   class name descriptor nanoseconds
+class CostProfile {
+
+    // times of the previous run
+    private Map<String,Long> costs = new HashMap<String,Long>();
+    // times of this run
+    private ConcurrentHashMap<String,Long> recorded =
+            new ConcurrentHashMap<String,Long>();
+    // nanoseconds per instruction, for the methods not in the profile
+    private double rate = 1;
+
+    public CostProfile() {}
+
+    public CostProfile( File file ) throws IOException {
+        if ( file.exists() ) {
+            load(file);
+        }
+    }
+
+    private static String key( ClassNode c, MethodNode m ) {
+        return c.name+" "+m.name+" "+m.desc;
+    }
+
+    private void load( File file ) throws IOException {
+        BufferedReader r = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while( (line = r.readLine()) != null ) {
+                int i = line.lastIndexOf(' ');
+                if ( i < 0 || line.startsWith("#") )
+                    continue;
+                try {
+                    costs.put(line.substring(0,i)
+                             ,Long.parseLong(line.substring(i+1)));
+                } catch ( NumberFormatException e ) {
+                    throw new IOException("Bad profile line: "+line);
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    // Sets the rate of the methods missing from the profile from the
+    // ones in it.
+    public void calibrate( Iterable<ClassNode> classes ) {
+        long nanos = 0;
+        long size = 0;
+        for( ClassNode c : classes ) {
+            for( MethodNode m : c.methods ) {
+                Long t = costs.get(key(c,m));
+                if ( t != null ) {
+                    nanos += t;
+                    size += m.instructions.size();
+                }
+            }
+        }
+        if ( nanos > 0 && size > 0 ) {
+            rate = (double)nanos / size;
+        }
+    }
+
+    // time m is expected to take
+    public long estimate( ClassNode c, MethodNode m ) {
+        Long t = costs.get(key(c,m));
+        if ( t != null )
+            return t;
+        return (long)(m.instructions.size() * rate);
+    }
+
+    public void record( ClassNode c, MethodNode m, long nanos ) {
+        String k = key(c,m);
+        Long old = recorded.putIfAbsent(k,nanos);
+        while( old != null && ! recorded.replace(k,old,old+nanos) ) {
+            old = recorded.get(k);
+        }
+    }
+
+    // Writes the times of this run, and the old ones of the methods not
+    // analyzed this time.
+    public void save( File file ) throws IOException {
+        TreeMap<String,Long> all = new TreeMap<String,Long>(costs);
+        all.putAll(recorded);
+        PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+        try {
+            for( Map.Entry<String,Long> e : all.entrySet() ) {
+                w.println(e.getKey()+" "+e.getValue());
+            }
+        } finally {
+            w.close();
+        }
+        if ( w.checkError() )
+            throw new IOException("Can't write "+file);
+    }
+}
@@ -0,0 +1,123 @@
+package staticAnalyzer;
+
+import java.io.*;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// The classes of a jar (or of a jmod, where they are under classes/),
+// found through its central directory: a class is located by name
+// without reading the others, and read when needed. Reads can be done by
+// more threads at the same time. The jars in BOOT-INF/lib are opened as
+// sources of their own, in memory.
+public class JarSource implements ClassSource {
+
+    private String jar;
+    private ZipFile zip;
+    // the jar as a zip file system, if it has jars inside, and the jars
+    // inside as zip file systems of their own
+    private FileSystem fs = null;
+    private List<FileSystem> inner = new ArrayList<FileSystem>();
+    private ClassIndex<ZipEntry> index;
+    private List<ClassSource> nested = new ArrayList<ClassSource>();
+
+    public JarSource( String jar ) throws IOException {
+        this(jar,Runtime.version().feature());
+    }
+
+    // release is the Java version the multi-release classes are taken for
+    public JarSource( String jar, int release ) throws IOException {
+        this.jar = jar;
+        this.zip = new ZipFile(jar);
+        String prefix = jar.endsWith(".jmod") ? "classes/" : "";
+        index = new ClassIndex<ZipEntry>(isMultiRelease(),release);
+        List<String> libs = new ArrayList<String>();
+        Enumeration<? extends ZipEntry> e = zip.entries();
+        while( e.hasMoreElements() ) {
+            ZipEntry ze = e.nextElement();
+            String name = ze.getName();
+            if ( ze.isDirectory() || ! name.startsWith(prefix) )
+                continue;
+            if ( name.startsWith("BOOT-INF/lib/") && name.endsWith(".jar") ) {
+                libs.add(name);
+                continue;
+            }
+            index.add(name.substring(prefix.length()),ze);
+        }
+        if ( ! libs.isEmpty() ) {
+            fs = FileSystems.newFileSystem(Paths.get(jar),(ClassLoader)null);
+            for( String lib : libs ) {
+                FileSystem lfs = FileSystems.newFileSystem(fs.getPath(lib)
+                                                          ,(ClassLoader)null);
+                inner.add(lfs);
+                nested.add(new PathSource(lfs.getPath("/"),release));
+            }
+        }
+    }
+
+    private boolean isMultiRelease() throws IOException {
+        ZipEntry ze = zip.getEntry("META-INF/MANIFEST.MF");
+        if ( ze == null )
+            return false;
+        InputStream in = zip.getInputStream(ze);
+        try {
+            return ClassIndex.isMultiRelease(new Manifest(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    public List<String> getClassNames() {
+        return index.names();
+    }
+
+    public boolean contains( String name ) {
+        return index.contains(name);
+    }
+
+    public byte[] read( String name ) throws IOException {
+        ZipEntry ze = index.get(name);
+        if ( ze == null )
+            return null;
+        InputStream in = zip.getInputStream(ze);
+        try {
+            return in.readAllBytes();
+        } finally {
+            in.close();
+        }
+    }
+
+    // the jars inside this one
+    public List<ClassSource> getNested() {
+        return nested;
+    }
+
+    // closes the jars inside first, then the jar; the first error is
+    // thrown once everything is closed
+    public void close() throws IOException {
+        List<Closeable> open = new ArrayList<Closeable>(nested);
+        open.addAll(inner);
+        if ( fs != null )
+            open.add(fs);
+        open.add(zip);
+        IOException error = null;
+        for( Closeable c : open ) {
+            try {
+                c.close();
+            } catch ( IOException e ) {
+                if ( error == null )
+                    error = e;
+            }
+        }
+        if ( error != null )
+            throw error;
+    }
+
+    public String toString() {
+        return jar;
+    }
+}
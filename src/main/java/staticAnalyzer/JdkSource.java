@@ -0,0 +1,98 @@
+package staticAnalyzer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The classes of the running JDK, read from its jrt:/ file system. The
+// module of a class is found from its package, under /packages; the
+// classes found and the names not found are remembered, so looking a
+// name up again touches neither the file system nor the class loader.
+// The JDK is only used to resolve names: it has no classes to analyze.
+public class JdkSource implements ClassSource {
+
+    private FileSystem jrt;
+    // modules of every package looked up
+    private ConcurrentHashMap<String,List<String>> modules =
+            new ConcurrentHashMap<String,List<String>>();
+    private ConcurrentHashMap<String,Path> found =
+            new ConcurrentHashMap<String,Path>();
+    private Set<String> missing = ConcurrentHashMap.newKeySet();
+
+    private JdkSource( FileSystem jrt ) {
+        this.jrt = jrt;
+    }
+
+    // the source of the running JDK, null if it has no jrt:/ file system
+    public static JdkSource running() {
+        try {
+            return new JdkSource(FileSystems.getFileSystem(URI.create("jrt:/")));
+        } catch ( FileSystemNotFoundException | ProviderNotFoundException e ) {
+            return null;
+        }
+    }
+
+    public List<String> getClassNames() {
+        return Collections.emptyList();
+    }
+
+    public boolean contains( String name ) {
+        return locate(name) != null;
+    }
+
+    public byte[] read( String name ) throws IOException {
+        Path p = locate(name);
+        return p == null ? null : Files.readAllBytes(p);
+    }
+
+    private Path locate( String name ) {
+        Path p = found.get(name);
+        if ( p != null || missing.contains(name) )
+            return p;
+        int slash = name.lastIndexOf('/');
+        String pkg = slash < 0 ? "" : name.substring(0,slash).replace('/','.');
+        for( String module : modules(pkg) ) {
+            p = jrt.getPath("/modules",module,name+".class");
+            if ( Files.isRegularFile(p) ) {
+                found.put(name,p);
+                return p;
+            }
+        }
+        missing.add(name);
+        return null;
+    }
+
+    private List<String> modules( String pkg ) {
+        List<String> l = modules.get(pkg);
+        if ( l != null )
+            return l;
+        l = new ArrayList<String>();
+        Path dir = jrt.getPath("/packages",pkg);
+        if ( ! pkg.isEmpty() && Files.isDirectory(dir) ) {
+            try {
+                DirectoryStream<Path> ds = Files.newDirectoryStream(dir);
+                try {
+                    for( Path m : ds ) {
+                        l.add(m.getFileName().toString());
+                    }
+                } finally {
+                    ds.close();
+                }
+            } catch ( IOException e ) {
+                // taken as not in the JDK
+            }
+        }
+        List<String> old = modules.putIfAbsent(pkg,l);
+        return old != null ? old : l;
+    }
+
+    // the jrt:/ file system is the JDK's, shared: it stays open
+    public void close() {
+    }
+
+    public String toString() {
+        return "jrt:/";
+    }
+}
@@ -4,13 +4,36 @@ import java.util.*;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.ClassNode;
 
+// A method by class, name and descriptor: it holds the names only, so
+// the class can be dropped and parsed again and still have the same
+// signature.
 class MethodSignature {
-    private MethodNode m;
-    private ClassNode c;
+    private String name;
+    private String desc;
+    private String owner;
+    private int hash;
 
     public MethodSignature(MethodNode m, ClassNode c) {
-        this.m = m;
-        this.c = c;
+        this(c.name, m.name, m.desc);
+    }
+
+    public MethodSignature(String owner, String name, String desc) {
+        this.name = name;
+        this.desc = desc;
+        this.owner = owner;
+        this.hash = (owner.hashCode()*31 + name.hashCode())*31 + desc.hashCode();
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDesc() {
+        return desc;
     }
 
     public boolean equals( Object o ) {
@@ -19,20 +42,15 @@ class MethodSignature {
 
         MethodSignature om = (MethodSignature)o;
         
-        if ( ! om.toString().equals(this.toString()) ) {
-            return false;
-        } else {
-            return true;
-        }
+        return hash == om.hash && name.equals(om.name)
+            && desc.equals(om.desc) && owner.equals(om.owner);
     }
 
     public String toString() {
-        return m.name+" "+m.desc+" "+c.name;
+        return name+" "+desc+" "+owner;
     }
 
     public int hashCode() {
-        String hash = m.name+" "+m.desc+" "+c.name;
-        int v = hash.hashCode();
-        return v;
+        return hash;
     }
 }
@@ -0,0 +1,192 @@
+package staticAnalyzer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+// Pre-pass over a method: it is split in basic blocks and every
+// instruction that doesn't change the control flow is decoded once into a
+// step bound to its opcode handler. Later fixpoint iterations only apply
+// the steps.
+class MethodTransfer {
+
+    // effect of one decoded instruction on the state
+    static abstract class Step {
+        protected int pc;
+
+        abstract void apply( Analysis a, MethodNode m, ClassNode j
+                           , State s );
+    }
+
+    private static class Push extends Step {
+        private Variable constant;
+
+        void apply( Analysis a, MethodNode m, ClassNode j, State s ) {
+            s.stackPush(constant.clone());
+        }
+    }
+
+    // the handler of the opcode, looked up once
+    private static class Handle extends Step {
+        private OpcodeHandler handler;
+        private AbstractInsnNode node;
+
+        void apply( Analysis a, MethodNode m, ClassNode j, State s ) {
+            handler.execute(a,m,node,pc,s,j);
+        }
+    }
+
+    // instruction outside the relevance slice: only its effect on the
+    // height of the stack is kept
+    private static class Skip extends Step {
+        private int pops;
+        private String type; // of the pushed value, null if none
+
+        void apply( Analysis a, MethodNode m, ClassNode j, State s ) {
+            for( int i = 0; i < pops; i++ ) {
+                s.stackPop();
+            }
+            if ( type != null ) {
+                s.stackPush(new Variable(type,Variable.Kind.LOCAL
+                                        ,Variable.DomainValue.TOP
+                                        ,Integer.MAX_VALUE,pc));
+            }
+        }
+    }
+
+    // pushed types of the arithmetic and conversion instructions
+    private static final String ARITHMETIC = "IJFD";
+    private static final String CONVERSION = "JFDIFDIJDIJFIII";
+
+    private ControlFlowGraph cfg;
+    // by instruction index, null for pseudo and control instructions
+    private Step[] steps;
+    // steps of every basic block, in order
+    private Step[][] blocks;
+
+    public MethodTransfer( Analysis a, MethodNode m ) {
+        InsnList il = m.instructions;
+        cfg = new ControlFlowGraph(m);
+        RelevanceSlice slice = a.isSlicing()
+                             ? new RelevanceSlice(a,m,cfg) : null;
+        steps = new Step[il.size()];
+        for( int i = 0; i < steps.length; i++ ) {
+            if ( slice != null && ! slice.isRelevant(i) ) {
+                steps[i] = skip(a,il.get(i),i);
+                if ( steps[i] != null )
+                    continue;
+            }
+            steps[i] = compile(a,il.get(i),i);
+        }
+
+        blocks = new Step[cfg.size()][];
+        for( int id = 0; id < cfg.size(); id++ ) {
+            ControlFlowGraph.BasicBlock b = cfg.getBlock(id);
+            int n = 0;
+            for( int i = b.getStart(); i <= b.getEnd(); i++ ) {
+                if ( steps[i] != null ) n++;
+            }
+            blocks[id] = new Step[n];
+            n = 0;
+            for( int i = b.getStart(); i <= b.getEnd(); i++ ) {
+                if ( steps[i] != null ) blocks[id][n++] = steps[i];
+            }
+        }
+    }
+
+    private static Step compile( Analysis a, AbstractInsnNode node, int pc ) {
+        int opcode = node.getOpcode();
+        Step step;
+
+        if ( opcode == -1 || isControl(opcode) ) {
+            return null;
+        } else if ( opcode >= Opcodes.ACONST_NULL && opcode <= Opcodes.LDC ) {
+            Push p = new Push();
+            p.constant = a.constant(node,pc);
+            if ( p.constant == null )
+                return null; // unknown constant, nothing pushed
+            step = p;
+        } else if ( a.getHandler(opcode) != null ) {
+            Handle h = new Handle();
+            h.handler = a.getHandler(opcode);
+            h.node = node;
+            step = h;
+        } else {
+            return null; // ignored opcode
+        }
+        step.pc = pc;
+        return step;
+    }
+
+    // Skip step of an instruction whose only effect that matters is on the
+    // stack height, null if it must be interpreted anyway.
+    private static Step skip( Analysis a, AbstractInsnNode node, int pc ) {
+        int opcode = node.getOpcode();
+        String type;
+
+        if ( opcode >= Opcodes.IADD && opcode <= Opcodes.DNEG ) {
+            type = ARITHMETIC.substring((opcode-Opcodes.IADD)%4
+                                       ,(opcode-Opcodes.IADD)%4+1);
+        } else if ( opcode >= Opcodes.ISHL && opcode <= Opcodes.LXOR ) {
+            type = ARITHMETIC.substring((opcode-Opcodes.ISHL)%2
+                                       ,(opcode-Opcodes.ISHL)%2+1);
+        } else if ( opcode >= Opcodes.I2L && opcode <= Opcodes.I2S ) {
+            type = CONVERSION.substring(opcode-Opcodes.I2L,opcode-Opcodes.I2L+1);
+        } else if ( opcode >= Opcodes.FCMPL && opcode <= Opcodes.DCMPG ) {
+            type = "I";
+        } else if ( opcode == Opcodes.INSTANCEOF
+                 || opcode == Opcodes.CHECKCAST ) {
+            type = "V";
+        } else if ( opcode >= Opcodes.INVOKEVIRTUAL
+                 && opcode <= Opcodes.INVOKEINTERFACE ) {
+            MethodInsnNode mi = (MethodInsnNode)node;
+            if ( a.isAnalyzable(mi.owner) )
+                return null; // may report in the callee
+            Type ret = Type.getReturnType(mi.desc);
+            type = ret.getSort() == Type.VOID ? null : ret.getDescriptor();
+        } else if ( opcode >= Opcodes.GETSTATIC && opcode <= Opcodes.PUTFIELD ) {
+            type = opcode == Opcodes.GETSTATIC || opcode == Opcodes.GETFIELD
+                 ? ((FieldInsnNode)node).desc : null;
+        } else if ( opcode == Opcodes.NEW ) {
+            type = Type.getObjectType(((TypeInsnNode)node).desc)
+                       .getDescriptor();
+        } else if ( opcode == Opcodes.MONITORENTER
+                 || opcode == Opcodes.MONITOREXIT ) {
+            type = null;
+        } else {
+            return null;
+        }
+
+        Skip sk = new Skip();
+        sk.pops = RelevanceSlice.pops(a,node);
+        sk.type = type;
+        sk.pc = pc;
+        return sk;
+    }
+
+    // instructions handled by the engines, not by steps
+    protected static boolean isControl( int opcode ) {
+        return (opcode >= Opcodes.IFEQ && opcode <= Opcodes.RETURN)
+            || opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL
+            || opcode == Opcodes.ATHROW;
+    }
+
+    public ControlFlowGraph getGraph() {
+        return cfg;
+    }
+
+    // step of the instruction at index, null if there is nothing to do
+    public Step getStep( int index ) {
+        return steps[index];
+    }
+
+    // applies all the steps of the block, the control instruction that
+    // may end it is left to the engine
+    public void applyBlock( int id, Analysis a, MethodNode m, ClassNode j
+                          , State s ) {
+        for( Step step : blocks[id] ) {
+            s.setPC(step.pc);
+            step.apply(a,m,j,s);
+        }
+    }
+}
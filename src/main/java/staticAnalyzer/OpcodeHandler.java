@@ -0,0 +1,321 @@
+package staticAnalyzer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+// Transfer function of one opcode. Analysis keeps a table of them indexed
+// by opcode; the instructions that change the control flow are left to
+// the engines and have no handler.
+abstract class OpcodeHandler {
+
+    abstract void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                         , int pci, State s, ClassNode j );
+
+    // the handlers of the interpreter, null where there is nothing to do
+    static OpcodeHandler[] table() {
+        OpcodeHandler[] t = new OpcodeHandler[256];
+
+        t[Opcodes.NOP] = new Nop();
+        for( int op = Opcodes.ACONST_NULL; op <= Opcodes.LDC; op++ )
+            t[op] = new Constant();
+        for( int op = Opcodes.ILOAD; op <= Opcodes.ALOAD; op++ )
+            t[op] = new Load();
+        for( int op = Opcodes.ISTORE; op <= Opcodes.ASTORE; op++ )
+            t[op] = new Store();
+        t[Opcodes.IINC] = new Iinc();
+        for( int op = Opcodes.POP; op <= Opcodes.SWAP; op++ )
+            t[op] = new Shuffle();
+        for( int op = Opcodes.IALOAD; op <= Opcodes.SALOAD; op++ )
+            t[op] = new ArrayAccess(false);
+        for( int op = Opcodes.IASTORE; op <= Opcodes.SASTORE; op++ )
+            t[op] = new ArrayAccess(true);
+
+        // arithmetic, same operation for I, L, F and D
+        register(t,Opcodes.IADD,4,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.add(v2); }
+        });
+        register(t,Opcodes.ISUB,4,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.sub(v2); }
+        });
+        register(t,Opcodes.IMUL,4,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.mul(v2); }
+        });
+        register(t,Opcodes.IDIV,4,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.div(v2); }
+        });
+        register(t,Opcodes.IREM,4,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.rem(v2); }
+        });
+        register(t,Opcodes.INEG,4,new Neg());
+        register(t,Opcodes.ISHL,2,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.shl(v2); }
+        });
+        register(t,Opcodes.ISHR,2,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.shr(v2); }
+        });
+        register(t,Opcodes.IUSHR,2,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.ushr(v2); }
+        });
+        register(t,Opcodes.IAND,2,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.and(v2); }
+        });
+        register(t,Opcodes.IOR,2,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.or(v2); }
+        });
+        register(t,Opcodes.IXOR,2,new Binary() {
+            Variable apply( Variable v1, Variable v2 ) { return v1.xor(v2); }
+        });
+
+        // conversions, I2B, I2C and I2S keep the type
+        String conversions = "IJ IF ID JI JF JD FI FJ FD DI DJ DF I  I  I  ";
+        for( int op = Opcodes.I2L; op <= Opcodes.I2S; op++ ) {
+            String c = conversions.substring((op-Opcodes.I2L)*3
+                                            ,(op-Opcodes.I2L)*3+2);
+            t[op] = new Conversion(c.substring(0,1)
+                                  ,c.charAt(1) == ' ' ? null : c.substring(1));
+        }
+
+        t[Opcodes.FCMPL] = new Compare("F");
+        t[Opcodes.FCMPG] = new Compare("F");
+        t[Opcodes.DCMPL] = new Compare("D");
+        t[Opcodes.DCMPG] = new Compare("D");
+        t[Opcodes.GETSTATIC] = new GetField();
+        t[Opcodes.GETFIELD] = new GetField();
+        t[Opcodes.PUTSTATIC] = new PutField();
+        t[Opcodes.PUTFIELD] = new PutField();
+        for( int op = Opcodes.INVOKEVIRTUAL; op <= Opcodes.INVOKEINTERFACE; op++ )
+            t[op] = new Invoke();
+        t[Opcodes.NEW] = new New();
+        t[Opcodes.ARRAYLENGTH] = new ArrayLength();
+        t[Opcodes.CHECKCAST] = new TypeCheck();
+        t[Opcodes.INSTANCEOF] = new TypeCheck();
+        t[Opcodes.MONITORENTER] = new Monitor();
+        t[Opcodes.MONITOREXIT] = new Monitor();
+        return t;
+    }
+
+    // the same handler for the n opcodes from first
+    private static void register( OpcodeHandler[] t, int first, int n
+                                , OpcodeHandler h ) {
+        for( int op = first; op < first+n; op++ )
+            t[op] = h;
+    }
+
+    static class Nop extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+        }
+    }
+
+    static class Constant extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            Variable v = a.constant(node,pci);
+            if (v != null) s.stackPush(v);
+        }
+    }
+
+    static class Load extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            s.stackPush(s.load(((VarInsnNode)node).var));
+        }
+    }
+
+    static class Store extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            a.storeLocal(s,((VarInsnNode)node).var,pci);
+        }
+    }
+
+    static class Iinc extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            IincInsnNode iinc = (IincInsnNode)node;
+            s.load(iinc.var).iinc(iinc.incr);
+        }
+    }
+
+    static class Shuffle extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            Analysis.shuffle(node.getOpcode(),s);
+        }
+    }
+
+    static class ArrayAccess extends OpcodeHandler {
+        private boolean isStore;
+
+        ArrayAccess( boolean isStore ) {
+            this.isStore = isStore;
+        }
+
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            Variable value = null;
+            if ( isStore ) { // store command
+                // eliminate value from stack.
+                value = s.stackPop();
+            }
+            Variable index    = s.stackPop(); // index variable
+            Variable arrayref = s.stackPop(); // array reference
+
+            if ( a.getSites() != null ) {
+                a.getSites().visit(j,m,pci);
+            }
+
+            // check if the index is safe
+            if ( ! index.isSafe(arrayref) ) {
+                // load is not safe, add report.
+                a.makeNewReport(m,j,pci);
+                // mark index as safe for arrayref.
+                index.addSafe(arrayref);
+            }
+            if ( !isStore ) {
+                s.stackPush(s.load(arrayref,index));
+            } else {
+                s.store(arrayref,index,value);
+            }
+        }
+    }
+
+    // v1 op v2, v2 on the top of the stack
+    static abstract class Binary extends OpcodeHandler {
+        abstract Variable apply( Variable v1, Variable v2 );
+
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            Variable v2 = s.stackPop();
+            Variable v1 = s.stackPop();
+            Variable v = apply(v1,v2);
+            v.setStartPC(pci);
+            s.stackPush(v);
+        }
+    }
+
+    static class Neg extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            Variable v = s.stackPop().neg();
+            v.setStartPC(pci);
+            s.stackPush(v);
+        }
+    }
+
+    static class Conversion extends OpcodeHandler {
+        private String from;
+        private String to; // null if the type is kept
+
+        Conversion( String from, String to ) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            Variable v = s.stackPop();
+            // I2B, I2C and I2S push back the same value
+            if ( to != null ) {
+                assert v.getType().equals(from);
+                v = v.cloneAs(to);
+            }
+            s.stackPush(v);
+        }
+    }
+
+    static class Compare extends OpcodeHandler {
+        private String type;
+
+        Compare( String type ) {
+            this.type = type;
+        }
+
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            Variable v1,v2;
+            v1 = s.stackPop();
+            v2 = s.stackPop();
+            assert v1.getType().equals(type);
+            assert v2.getType().equals(type);
+            s.stackPush(new Variable("I",Variable.Kind.CONST,
+                        Variable.DomainValue.TOP,Integer.MAX_VALUE,pci));
+        }
+    }
+
+    static class GetField extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            if ( node.getOpcode() == Opcodes.GETFIELD ) {
+                s.stackPop(); // objectref
+            }
+            Type t = Type.getType(((FieldInsnNode)node).desc);
+            s.stackPush(new Variable(t.getDescriptor()
+                                    ,Variable.Kind.FIELD
+                                    ,Variable.DomainValue.TOP
+                                    ,Integer.MAX_VALUE,pci));
+        }
+    }
+
+    static class PutField extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            s.stackPop(); // value
+            if ( node.getOpcode() == Opcodes.PUTFIELD ) {
+                s.stackPop(); // object ref
+            }
+        }
+    }
+
+    static class Invoke extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            a.invoke((MethodInsnNode)node,pci,s);
+        }
+    }
+
+    static class New extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            TypeInsnNode tin = (TypeInsnNode)node;
+            s.stackPush(new Variable(Type.getObjectType(tin.desc).getDescriptor()
+                        ,Variable.Kind.LOCAL
+                        ,Variable.DomainValue.TOP
+                        ,Integer.MAX_VALUE,pci));
+        }
+    }
+
+    static class ArrayLength extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            if ( a.getSites() != null ) {
+                a.getSites().visit(j,m,pci);
+            }
+            Variable arrayref = s.stackPop();
+            Variable edge     = new Variable("I",Variable.Kind.LOCAL
+                                            ,Variable.DomainValue.GEQ0
+                                            ,Integer.MAX_VALUE,pci);
+            edge.addEdge(arrayref);
+            s.stackPush(edge);
+        }
+    }
+
+    static class TypeCheck extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            s.stackPop(); //@TODO atm ignoring types
+            s.stackPush(new Variable("V"
+                        ,Variable.Kind.LOCAL
+                        ,Variable.DomainValue.TOP
+                        ,Integer.MAX_VALUE,pci));
+        }
+    }
+
+    static class Monitor extends OpcodeHandler {
+        void execute( Analysis a, MethodNode m, AbstractInsnNode node
+                    , int pci, State s, ClassNode j ) {
+            s.stackPop();
+        }
+    }
+}
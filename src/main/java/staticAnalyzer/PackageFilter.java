@@ -0,0 +1,122 @@
+package staticAnalyzer;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Which classes of the inputs to analyze, by internal name. Patterns are
+// package names ("com.acme" or "com/acme", the package and everything
+// under it) or globs over the segments of the name: * in a segment
+// matches any part of it and a ** segment any number of segments
+// ("com.acme.*.Main", "**.internal.**"). A class is analyzed if it
+// matches an include, or there are none, and no exclude. The patterns
+// are compiled into a trie over the segments, so a name is matched in
+// one walk whatever the number of patterns.
+public class PackageFilter {
+
+    private static class Node {
+        private Map<String,Node> children = new HashMap<String,Node>();
+        // segments with a *, in the order added
+        private Map<String,Node> globs = new LinkedHashMap<String,Node>();
+        private Map<String,Pattern> compiled = new HashMap<String,Pattern>();
+        // what follows a ** segment
+        private Node deep = null;
+        private boolean end = false; // a pattern ends here
+        private boolean all = false; // and matches everything under it
+
+        private Node child( String segment ) {
+            if ( segment.equals("**") ) {
+                if ( deep == null )
+                    deep = new Node();
+                return deep;
+            }
+            Map<String,Node> m = segment.indexOf('*') < 0 ? children : globs;
+            Node n = m.get(segment);
+            if ( n == null ) {
+                n = new Node();
+                m.put(segment,n);
+                if ( m == globs )
+                    compiled.put(segment,glob(segment));
+            }
+            return n;
+        }
+    }
+
+    private Node includes = null;
+    private Node excludes = null;
+
+    public void include( String pattern ) {
+        if ( includes == null )
+            includes = new Node();
+        add(includes,pattern);
+    }
+
+    public void exclude( String pattern ) {
+        if ( excludes == null )
+            excludes = new Node();
+        add(excludes,pattern);
+    }
+
+    // true if no pattern was added
+    public boolean isEmpty() {
+        return includes == null && excludes == null;
+    }
+
+    public boolean accepts( String name ) {
+        if ( isEmpty() )
+            return true;
+        String[] segments = name.split("/");
+        if ( includes != null && ! matches(includes,segments,0) )
+            return false;
+        return excludes == null || ! matches(excludes,segments,0);
+    }
+
+    private static void add( Node root, String pattern ) {
+        String p = pattern.replace('.','/');
+        while( p.endsWith("/") )
+            p = p.substring(0,p.length()-1);
+        if ( p.isEmpty() )
+            throw new IllegalArgumentException("Empty package pattern");
+        String[] segments = p.split("/");
+        Node n = root;
+        for( String s : segments ) {
+            n = n.child(s);
+        }
+        n.end = true;
+        // a package name takes what is under it, a glob only what it says
+        // (a trailing ** takes everything under its parent)
+        if ( p.indexOf('*') < 0 || segments[segments.length-1].equals("**") )
+            n.all = true;
+    }
+
+    private static boolean matches( Node n, String[] segments, int i ) {
+        if ( n.all && i < segments.length )
+            return true;
+        if ( n.deep != null ) {
+            for( int j = i; j <= segments.length; j++ ) {
+                if ( matches(n.deep,segments,j) )
+                    return true;
+            }
+        }
+        if ( i == segments.length )
+            return n.end;
+        Node c = n.children.get(segments[i]);
+        if ( c != null && matches(c,segments,i+1) )
+            return true;
+        for( Map.Entry<String,Node> e : n.globs.entrySet() ) {
+            if ( n.compiled.get(e.getKey()).matcher(segments[i]).matches()
+                    && matches(e.getValue(),segments,i+1) )
+                return true;
+        }
+        return false;
+    }
+
+    private static Pattern glob( String segment ) {
+        StringBuilder b = new StringBuilder();
+        for( String part : segment.split("\\*",-1) ) {
+            if ( b.length() > 0 )
+                b.append(".*");
+            b.append(Pattern.quote(part));
+        }
+        return Pattern.compile(b.toString());
+    }
+}
@@ -0,0 +1,111 @@
+package staticAnalyzer;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.Manifest;
+
+// The classes under a directory, of the disk or of a zip file system (a
+// jar inside a jar). The tree is walked in parallel, a task for every
+// directory; the class names are the paths from the root.
+public class PathSource implements ClassSource {
+
+    private Path root;
+    private ClassIndex<Path> index;
+
+    public PathSource( Path root ) throws IOException {
+        this(root,Runtime.version().feature());
+    }
+
+    public PathSource( Path root, int release ) throws IOException {
+        this.root = root;
+        Path manifest = root.resolve("META-INF").resolve("MANIFEST.MF");
+        boolean versioned = false;
+        if ( Files.exists(manifest) ) {
+            InputStream in = Files.newInputStream(manifest);
+            try {
+                versioned = ClassIndex.isMultiRelease(new Manifest(in));
+            } finally {
+                in.close();
+            }
+        }
+        index = new ClassIndex<Path>(versioned,release);
+        List<Path> files;
+        try {
+            files = ForkJoinPool.commonPool().invoke(new Walk(root));
+        } catch ( UncheckedIOException e ) {
+            throw e.getCause();
+        }
+        String separator = root.getFileSystem().getSeparator();
+        TreeMap<String,Path> sorted = new TreeMap<String,Path>();
+        for( Path p : files ) {
+            sorted.put(root.relativize(p).toString().replace(separator,"/"),p);
+        }
+        for( Map.Entry<String,Path> e : sorted.entrySet() ) {
+            index.add(e.getKey(),e.getValue());
+        }
+    }
+
+    // the class files under a directory; a task is serializable, but never
+    // serialized
+    private static class Walk extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+
+        private transient Path dir;
+
+        Walk( Path dir ) {
+            this.dir = dir;
+        }
+
+        protected List<Path> compute() {
+            List<Path> files = new ArrayList<Path>();
+            List<Walk> subdirs = new ArrayList<Walk>();
+            try {
+                DirectoryStream<Path> ds = Files.newDirectoryStream(dir);
+                try {
+                    for( Path p : ds ) {
+                        if ( Files.isDirectory(p) ) {
+                            Walk w = new Walk(p);
+                            w.fork();
+                            subdirs.add(w);
+                        } else if ( p.toString().endsWith(".class") ) {
+                            files.add(p);
+                        }
+                    }
+                } finally {
+                    ds.close();
+                }
+            } catch ( IOException e ) {
+                throw new UncheckedIOException(e);
+            }
+            for( Walk w : subdirs ) {
+                files.addAll(w.join());
+            }
+            return files;
+        }
+    }
+
+    public List<String> getClassNames() {
+        return index.names();
+    }
+
+    public boolean contains( String name ) {
+        return index.contains(name);
+    }
+
+    public byte[] read( String name ) throws IOException {
+        Path p = index.get(name);
+        return p == null ? null : Files.readAllBytes(p);
+    }
+
+    // nothing is kept open; the file system of root, if a zip, is closed
+    // by whoever opened it
+    public void close() {
+    }
+
+    public String toString() {
+        return root.toUri().toString();
+    }
+}
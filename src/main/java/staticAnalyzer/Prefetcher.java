@@ -0,0 +1,109 @@
+package staticAnalyzer;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Reads and parses the classes to analyze ahead of the analysis, which
+// starts on the first ones while the others are loading. A reader thread
+// reads (inflates, for a jar) their class files in order, and parser
+// threads parse them into the Repository. The queue between the two is
+// bounded, so slow parsers stop the reader instead of letting class files
+// pile up. A class the analysis looks up before its turn is parsed by the
+// lookup, and then skipped here.
+class Prefetcher {
+    private static final int QUEUE = 64;
+
+    private static class Loaded {
+        final String name;
+        final byte[] file;
+
+        Loaded( String name, byte[] file ) {
+            this.name = name;
+            this.file = file;
+        }
+    }
+
+    // one per parser, after the last class
+    private static final Loaded END = new Loaded(null,null);
+
+    private List<String> names;
+    private BlockingQueue<Loaded> queue = new ArrayBlockingQueue<Loaded>(QUEUE);
+    private List<Thread> threads = new ArrayList<Thread>();
+
+    public Prefetcher( List<String> names, int parsers ) {
+        this.names = new ArrayList<String>(names);
+        threads.add(thread("prefetch-reader",new Runnable() {
+            public void run() {
+                read();
+            }
+        }));
+        for( int i = 0; i < parsers; i++ ) {
+            threads.add(thread("prefetch-parser-"+i,new Runnable() {
+                public void run() {
+                    parse();
+                }
+            }));
+        }
+    }
+
+    private static Thread thread( String name, Runnable r ) {
+        Thread t = new Thread(r,name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    public void start() {
+        for( Thread t : threads )
+            t.start();
+    }
+
+    // stops the threads, if the analysis got ahead of them
+    public void stop() {
+        for( Thread t : threads )
+            t.interrupt();
+        try {
+            for( Thread t : threads )
+                t.join();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void read() {
+        try {
+            for( String name : names ) {
+                if ( Repository.isParsed(name) )
+                    continue;
+                byte[] file;
+                try {
+                    file = Repository.readClass(name);
+                } catch ( IOException e ) {
+                    continue; // thrown again by the lookup that needs it
+                }
+                if ( file != null )
+                    queue.put(new Loaded(name,file));
+            }
+            for( int i = 1; i < threads.size(); i++ )
+                queue.put(END);
+        } catch ( InterruptedException e ) {
+            // stopped
+        }
+    }
+
+    private void parse() {
+        try {
+            Loaded l;
+            while( (l = queue.take()) != END ) {
+                try {
+                    Repository.parseClass(l.name,l.file);
+                } catch ( RuntimeException e ) {
+                    // thrown again by the lookup that needs it
+                }
+            }
+        } catch ( InterruptedException e ) {
+            // stopped
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package staticAnalyzer;
+
+import java.util.*;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+// Backward slice of a method from the instructions whose operands can
+// decide a report: array accesses, ARRAYLENGTH, integer comparisons,
+// returns, throws and calls to analyzable methods. Values are followed
+// through the stack inside a basic block and through the local slots
+// (flow insensitive); a value still on the stack at the end of a block is
+// always relevant. Instructions outside the slice only need their effect
+// on the height of the stack.
+class RelevanceSlice {
+
+    private BitSet relevant;
+
+    public RelevanceSlice( Analysis a, MethodNode m, ControlFlowGraph cfg ) {
+        InsnList il = m.instructions;
+        int n = il.size();
+        relevant = new BitSet(n);
+        if ( ! isSliceable(il) ) {
+            relevant.set(0,n);
+            return;
+        }
+
+        // producers consumed by every instruction, -1 if unknown
+        int[][] uses = new int[n][];
+        BitSet roots = new BitSet(n);
+        Map<Integer,List<Integer>> stores = new HashMap<Integer,List<Integer>>();
+
+        for( int id = 0; id < cfg.size(); id++ ) {
+            ControlFlowGraph.BasicBlock b = cfg.getBlock(id);
+            // values of the block, the ones below it are unknown
+            Deque<Integer> stack = new ArrayDeque<Integer>();
+            for( int i = b.getStart(); i <= b.getEnd(); i++ ) {
+                AbstractInsnNode node = il.get(i);
+                int opcode = node.getOpcode();
+                if ( opcode == -1 ) continue;
+
+                if ( opcode >= Opcodes.POP && opcode <= Opcodes.SWAP ) {
+                    shuffle(opcode,stack);
+                    continue;
+                }
+                int[] u = new int[pops(a,node)];
+                for( int k = u.length-1; k >= 0; k-- ) {
+                    u[k] = stack.isEmpty() ? -1 : stack.pop();
+                }
+                uses[i] = u;
+                if ( pushes(a,node) ) {
+                    stack.push(i);
+                }
+
+                if ( opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE ) {
+                    int var = ((VarInsnNode)node).var;
+                    List<Integer> l = stores.get(var);
+                    if ( l == null ) {
+                        l = new ArrayList<Integer>();
+                        stores.put(var,l);
+                    }
+                    l.add(i);
+                } else if ( isRoot(a,node) ) {
+                    roots.set(i);
+                }
+            }
+            for( int p : stack ) {
+                if ( p >= 0 ) roots.set(p);
+            }
+        }
+
+        // close the roots over the uses and the local slots
+        Set<Integer> slots = new HashSet<Integer>();
+        Deque<Integer> work = new ArrayDeque<Integer>();
+        for( int i = roots.nextSetBit(0); i >= 0; i = roots.nextSetBit(i+1) ) {
+            relevant.set(i);
+            work.push(i);
+        }
+        while( ! work.isEmpty() ) {
+            int i = work.pop();
+            AbstractInsnNode node = il.get(i);
+            int opcode = node.getOpcode();
+            if ( opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD
+                    && slots.add(((VarInsnNode)node).var) ) {
+                List<Integer> l = stores.get(((VarInsnNode)node).var);
+                if ( l != null ) {
+                    for( int st : l ) {
+                        if ( ! relevant.get(st) ) {
+                            relevant.set(st);
+                            work.push(st);
+                        }
+                    }
+                }
+            }
+            if ( uses[i] == null ) continue;
+            for( int p : uses[i] ) {
+                if ( p >= 0 && ! relevant.get(p) ) {
+                    relevant.set(p);
+                    work.push(p);
+                }
+            }
+        }
+    }
+
+    // true if the instruction at index can change a report
+    public boolean isRelevant( int index ) {
+        return relevant.get(index);
+    }
+
+    public int size() {
+        return relevant.cardinality();
+    }
+
+    // The stack is followed value by value as Analysis does, so the
+    // instructions it doesn't model, and the shuffles that depend on the
+    // category of the values, leave the whole method in the slice.
+    private static boolean isSliceable( InsnList il ) {
+        for( AbstractInsnNode node = il.getFirst(); node != null
+                ; node = node.getNext() ) {
+            switch( node.getOpcode() ) {
+                case Opcodes.LCMP:
+                case Opcodes.JSR:
+                case Opcodes.RET:
+                case Opcodes.TABLESWITCH:
+                case Opcodes.LOOKUPSWITCH:
+                case Opcodes.INVOKEDYNAMIC:
+                case Opcodes.MULTIANEWARRAY:
+                case Opcodes.POP2:
+                case Opcodes.DUP_X2:
+                case Opcodes.DUP2:
+                case Opcodes.DUP2_X1:
+                case Opcodes.DUP2_X2:
+                    return false;
+                case Opcodes.LDC:
+                    Object cst = ((LdcInsnNode)node).cst;
+                    if ( ! (cst instanceof Number || cst instanceof String
+                            || cst instanceof Type) )
+                        return false;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    // instructions whose operands are always needed
+    private static boolean isRoot( Analysis a, AbstractInsnNode node ) {
+        int opcode = node.getOpcode();
+        return (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD)
+            || (opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE)
+            || opcode == Opcodes.ARRAYLENGTH
+            || (opcode >= Opcodes.IFEQ && opcode <= Opcodes.IF_ICMPLE)
+            || (opcode >= Opcodes.IRETURN && opcode <= Opcodes.ARETURN)
+            || opcode == Opcodes.ATHROW
+            || (opcode >= Opcodes.INVOKEVIRTUAL
+                && opcode <= Opcodes.INVOKEINTERFACE
+                && a.isAnalyzable(((MethodInsnNode)node).owner));
+    }
+
+    // values popped by the instruction, as Analysis pops them
+    protected static int pops( Analysis a, AbstractInsnNode node ) {
+        int opcode = node.getOpcode();
+        if ( opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD ) {
+            return 2;
+        } else if ( opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE ) {
+            return 3;
+        } else if ( opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE ) {
+            return 1;
+        } else if ( opcode >= Opcodes.INEG && opcode <= Opcodes.DNEG ) {
+            return 1;
+        } else if ( opcode >= Opcodes.IADD && opcode <= Opcodes.LXOR ) {
+            return 2;
+        } else if ( opcode >= Opcodes.I2L && opcode <= Opcodes.I2S ) {
+            return 1;
+        } else if ( opcode >= Opcodes.FCMPL && opcode <= Opcodes.DCMPG ) {
+            return 2;
+        } else if ( opcode >= Opcodes.IFEQ && opcode <= Opcodes.IFLE ) {
+            return 1;
+        } else if ( opcode >= Opcodes.IF_ICMPEQ && opcode <= Opcodes.IF_ACMPNE ) {
+            return 2;
+        } else if ( opcode >= Opcodes.IRETURN && opcode <= Opcodes.ARETURN ) {
+            return 1;
+        } else if ( opcode == Opcodes.GETFIELD || opcode == Opcodes.PUTSTATIC ) {
+            return 1;
+        } else if ( opcode == Opcodes.PUTFIELD ) {
+            return 2;
+        } else if ( opcode >= Opcodes.INVOKEVIRTUAL
+                 && opcode <= Opcodes.INVOKEINTERFACE ) {
+            int n = Type.getArgumentTypes(((MethodInsnNode)node).desc).length;
+            return opcode == Opcodes.INVOKESTATIC ? n : n+1;
+        } else if ( opcode == Opcodes.ARRAYLENGTH || opcode == Opcodes.ATHROW
+                 || opcode == Opcodes.INSTANCEOF || opcode == Opcodes.CHECKCAST
+                 || opcode == Opcodes.MONITORENTER
+                 || opcode == Opcodes.MONITOREXIT
+                 || opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL ) {
+            return 1;
+        }
+        return 0;
+    }
+
+    // true if the instruction pushes a value, as Analysis does
+    protected static boolean pushes( Analysis a, AbstractInsnNode node ) {
+        int opcode = node.getOpcode();
+        if ( opcode >= Opcodes.INVOKEVIRTUAL
+                && opcode <= Opcodes.INVOKEINTERFACE ) {
+            return Type.getReturnType(((MethodInsnNode)node).desc).getSort()
+                   != Type.VOID;
+        }
+        return (opcode >= Opcodes.ACONST_NULL && opcode <= Opcodes.ALOAD)
+            || (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD)
+            || (opcode >= Opcodes.IADD && opcode <= Opcodes.LXOR)
+            || (opcode >= Opcodes.I2L && opcode <= Opcodes.I2S)
+            || (opcode >= Opcodes.FCMPL && opcode <= Opcodes.DCMPG)
+            || opcode == Opcodes.GETSTATIC || opcode == Opcodes.GETFIELD
+            || opcode == Opcodes.NEW || opcode == Opcodes.ARRAYLENGTH
+            || opcode == Opcodes.INSTANCEOF || opcode == Opcodes.CHECKCAST;
+    }
+
+    // category 1 shuffles, the others are not sliced
+    private static void shuffle( int opcode, Deque<Integer> stack ) {
+        int top_0 = stack.isEmpty() ? -1 : stack.pop();
+        if ( opcode == Opcodes.POP ) {
+            return;
+        } else if ( opcode == Opcodes.DUP ) {
+            stack.push(top_0);
+            stack.push(top_0);
+            return;
+        }
+        int top_1 = stack.isEmpty() ? -1 : stack.pop();
+        if ( opcode == Opcodes.DUP_X1 ) {
+            stack.push(top_0);
+            stack.push(top_1);
+            stack.push(top_0);
+        } else { // SWAP
+            stack.push(top_0);
+            stack.push(top_1);
+        }
+    }
+}
@@ -1,34 +1,444 @@
 package staticAnalyzer;
 
+import org.objectweb.asm.*;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.ClassReader;
-import java.util.HashMap;
-import java.util.Map;
+import org.objectweb.asm.tree.MethodNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Classes by internal name, shared by the analysis threads. A class is
+// kept as its class file (or left in its source) until the first lookup,
+// which parses it without what the analysis never reads. With a budget
+// the class files are kept in a ClassArena and the parsed classes in an
+// LRU cache, parsed again when needed after being dropped. What the site
+// index needs of a class is taken at its first parse and kept when it is
+// dropped, so the index never parses a class again.
 public class Repository {
-    private static Map<String, ClassNode> classes = new HashMap<String, ClassNode>();
+    private static ConcurrentHashMap<String, ClassNode> classes = new ConcurrentHashMap<String, ClassNode>();
+    // class files added and not parsed yet
+    private static ConcurrentHashMap<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+    private static List<ClassSource> sources = new CopyOnWriteArrayList<ClassSource>();
+    private static JdkSource jdk = JdkSource.running();
+    // names no source has, so they are not looked for again
+    private static Set<String> missing = ConcurrentHashMap.newKeySet();
+    // bounded mode, null if every class is kept
+    private static ClassCache cache = null;
+    private static ClassArena arena = null;
+    private static Set<String> parsed = ConcurrentHashMap.newKeySet();
+    private static AtomicLong reparses = new AtomicLong();
+    // facts of the classes parsed, evicted or not
+    private static ConcurrentHashMap<String, ClassFacts> facts = new ConcurrentHashMap<String, ClassFacts>();
+
+    // Parsed classes, the least recently used dropped when their class
+    // files add up to more than budget bytes.
+    private static class ClassCache {
+        private long budget;
+        private long used = 0;
+        private long evictions = 0;
+        private LinkedHashMap<String, ClassNode> nodes =
+                new LinkedHashMap<String, ClassNode>(16, 0.75f, true);
+        private LinkedHashMap<String, Integer> sizes =
+                new LinkedHashMap<String, Integer>();
+
+        ClassCache(long budget) {
+            this.budget = budget;
+        }
+
+        synchronized ClassNode get(String name) {
+            return nodes.get(name);
+        }
+
+        // the class already cached, or null if c was added
+        synchronized ClassNode putIfAbsent(String name, ClassNode c, int size) {
+            ClassNode old = nodes.get(name);
+            if (old != null) {
+                return old;
+            }
+            nodes.put(name, c);
+            sizes.put(name, size);
+            used += size;
+            Iterator<String> lru = nodes.keySet().iterator();
+            while (used > budget && nodes.size() > 1) {
+                String n = lru.next();
+                lru.remove();
+                used -= sizes.remove(n);
+                evictions++;
+            }
+            return null;
+        }
+
+        synchronized void remove(String name) {
+            if (nodes.remove(name) != null) {
+                used -= sizes.remove(name);
+            }
+        }
+
+        synchronized long getEvictions() {
+            return evictions;
+        }
+    }
+
+    // Keeps the parsed classes within budget bytes of class files, and the
+    // class files off the heap; 0 keeps every class. Set it before adding
+    // classes: the ones in the arena are dropped with it.
+    public static void setBudget(long budget) throws IOException {
+        if (arena != null) {
+            arena.close();
+        }
+        cache = budget > 0 ? new ClassCache(budget) : null;
+        arena = budget > 0 ? new ClassArena() : null;
+        parsed.clear();
+        reparses.set(0);
+    }
+
+    public static boolean isBounded() {
+        return cache != null;
+    }
 
     public static void addClass(ClassNode node) {
         classes.put(node.name, node);
+        facts.put(node.name, new ClassFacts(node));
+    }
+
+    // adds a class file, to parse when needed, in place of the one added
+    // or read before; returns the class name
+    public static String addClass(byte[] file) {
+        String name = new ClassReader(file).getClassName();
+        forget(name);
+        missing.remove(name);
+        if (arena != null) {
+            try {
+                arena.put(name, file);
+                return name;
+            } catch (IOException e) {
+                // kept on the heap
+            }
+        }
+        files.put(name, file);
+        return name;
+    }
+
+    // Drops a class, as if no source had it, until it is added again.
+    public static void removeClass(String name) {
+        forget(name);
+        missing.add(name);
+    }
+
+    private static void forget(String name) {
+        classes.remove(name);
+        files.remove(name);
+        parsed.remove(name);
+        facts.remove(name);
+        if (cache != null) {
+            cache.remove(name);
+            arena.remove(name);
+        }
+    }
+
+    // where to look for the classes not added
+    public static void addSource(ClassSource source) {
+        sources.add(source);
+        missing.clear();
+    }
+
+    // Closes the sources and stops looking in them; the classes parsed
+    // and the class files added are kept.
+    public static void closeSources() {
+        for (ClassSource s : sources) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // nothing more is read from it anyway
+            }
+        }
+        sources.clear();
     }
 
     public static ClassNode lookupClass(String name) throws ClassNotFoundException {
-        ClassNode c = classes.get(name);
+        if (name == null) {
+            throw new ClassNotFoundException();
+        }
+        ClassNode c = cached(name);
+        if (c != null) {
+            return c;
+        }
+        if (missing.contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        try {
+            c = load(name);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        } catch (RuntimeException e) {
+            throw new ClassNotFoundException(name, e);
+        }
         if (c == null) {
-            try {
-                // Try to load system class
-                ClassReader cr = new ClassReader(name);
-                c = new ClassNode();
-                cr.accept(c, 0);
-                classes.put(name, c);
-            } catch (Exception e) {
-                throw new ClassNotFoundException(name);
+            throw new ClassNotFoundException(name);
+        }
+        return c;
+    }
+
+    // Like lookupClass, but null if the class can't be found: for walks of
+    // the class tree, where a missing class is not an error.
+    public static ClassNode findClass(String name) {
+        if (name == null) {
+            return null;
+        }
+        ClassNode c = cached(name);
+        if (c != null || missing.contains(name)) {
+            return c;
+        }
+        try {
+            return load(name);
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // The class file of an input class, null if it is not one (or it was
+    // added parsed, or it was parsed already without a budget).
+    public static byte[] readClass(String name) throws IOException {
+        byte[] file = arena != null ? arena.get(name) : files.get(name);
+        return file != null ? file : fromSources(name);
+    }
+
+    private static ClassNode cached(String name) {
+        ClassNode c = classes.get(name);
+        if (c == null && cache != null) {
+            c = cache.get(name);
+        }
+        return c;
+    }
+
+    private static ClassNode load(String name) throws IOException {
+        byte[] file = arena != null ? arena.get(name) : files.get(name);
+        if (file == null) {
+            // parsed by another thread since cached, which dropped the file
+            ClassNode c = cached(name);
+            if (c != null) {
+                return c;
+            }
+            file = fromSources(name);
+        }
+        if (file == null && jdk != null) {
+            file = jdk.read(name);
+        }
+        if (file == null) {
+            // Try to load from the class path
+            file = fromSystem(name);
+        }
+        if (file == null) {
+            missing.add(name);
+            return null;
+        }
+        return store(name, file);
+    }
+
+    // The facts of name, taken when it was first parsed: it is parsed
+    // only if it never was. Null if it can't be found.
+    static ClassFacts getFacts(String name) {
+        ClassFacts f = facts.get(name);
+        if (f == null && findClass(name) != null) {
+            f = facts.get(name);
+        }
+        return f;
+    }
+
+    // true if name is parsed and kept
+    public static boolean isParsed(String name) {
+        return cached(name) != null;
+    }
+
+    // Parses the class file of name read ahead of its lookup, unless it is
+    // parsed already; the first class parsed is the one kept.
+    public static void parseClass(String name, byte[] file) {
+        if (cached(name) == null) {
+            store(name, file);
+        }
+    }
+
+    // Parses and keeps a class. Under a budget only the added class files
+    // are in the arena: the others are read again from their source (or
+    // the JDK) if the class is evicted and looked up again.
+    private static ClassNode store(String name, byte[] file) {
+        ClassNode c = parse(file);
+        if (!facts.containsKey(name)) {
+            facts.putIfAbsent(name, new ClassFacts(c));
+        }
+        if (cache != null) {
+            if (!parsed.add(name)) {
+                reparses.incrementAndGet();
+            }
+            ClassNode old = cache.putIfAbsent(name, c, file.length);
+            return old != null ? old : c;
+        }
+        // another thread may have parsed it meanwhile
+        ClassNode old = classes.putIfAbsent(name, c);
+        if (old != null) {
+            return old;
+        }
+        files.remove(name);
+        return c;
+    }
+
+    private static byte[] fromSources(String name) throws IOException {
+        for (ClassSource s : sources) {
+            if (s.contains(name)) {
+                return s.read(name);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] fromSystem(String name) throws IOException {
+        InputStream in = ClassLoader.getSystemResourceAsStream(name + ".class");
+        if (in == null) {
+            return null;
+        }
+        try {
+            return in.readAllBytes();
+        } finally {
+            in.close();
+        }
+    }
+
+    // Frames are skipped (they are computed again if needed) and the line
+    // numbers and the source file kept, for the reports. InsnList indexes
+    // its nodes lazily: it is done here, before other threads can see them.
+    private static ClassNode parse(byte[] file) {
+        ClassNode c = new ClassNode();
+        new ClassReader(file).accept(new Slim(c), ClassReader.SKIP_FRAMES);
+        for (MethodNode m : c.methods) {
+            if (m.instructions.size() > 0) {
+                m.instructions.get(0);
             }
         }
         return c;
     }
 
+    // Drops fields, annotations, local variable tables, signatures and
+    // non standard attributes.
+    private static class Slim extends ClassVisitor {
+        Slim(ClassVisitor cv) {
+            super(Opcodes.ASM9, cv);
+        }
+
+        public void visit(int version, int access, String name,
+                String signature, String superName, String[] interfaces) {
+            super.visit(version, access, name, null, superName, interfaces);
+        }
+
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            return null;
+        }
+
+        public AnnotationVisitor visitTypeAnnotation(int typeRef,
+                TypePath typePath, String desc, boolean visible) {
+            return null;
+        }
+
+        public void visitAttribute(Attribute attr) {
+        }
+
+        public FieldVisitor visitField(int access, String name, String desc,
+                String signature, Object value) {
+            return null;
+        }
+
+        public MethodVisitor visitMethod(int access, String name, String desc,
+                String signature, String[] exceptions) {
+            return new SlimMethod(super.visitMethod(access, name, desc,
+                                                    null, exceptions));
+        }
+    }
+
+    private static class SlimMethod extends MethodVisitor {
+        SlimMethod(MethodVisitor mv) {
+            super(Opcodes.ASM9, mv);
+        }
+
+        public void visitParameter(String name, int access) {
+        }
+
+        public AnnotationVisitor visitAnnotationDefault() {
+            return null;
+        }
+
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            return null;
+        }
+
+        public AnnotationVisitor visitTypeAnnotation(int typeRef,
+                TypePath typePath, String desc, boolean visible) {
+            return null;
+        }
+
+        public void visitAnnotableParameterCount(int count, boolean visible) {
+        }
+
+        public AnnotationVisitor visitParameterAnnotation(int parameter,
+                String desc, boolean visible) {
+            return null;
+        }
+
+        public void visitAttribute(Attribute attr) {
+        }
+
+        public AnnotationVisitor visitInsnAnnotation(int typeRef,
+                TypePath typePath, String desc, boolean visible) {
+            return null;
+        }
+
+        public AnnotationVisitor visitTryCatchAnnotation(int typeRef,
+                TypePath typePath, String desc, boolean visible) {
+            return null;
+        }
+
+        public void visitLocalVariable(String name, String desc,
+                String signature, Label start, Label end, int index) {
+        }
+
+        public AnnotationVisitor visitLocalVariableAnnotation(int typeRef,
+                TypePath typePath, Label[] start, Label[] end, int[] index,
+                String desc, boolean visible) {
+            return null;
+        }
+    }
+
     public static void clear() {
         classes.clear();
+        files.clear();
+        closeSources();
+        missing.clear();
+        parsed.clear();
+        facts.clear();
+        reparses.set(0);
+        cache = null;
+        if (arena != null) {
+            try {
+                arena.close();
+            } catch (IOException e) {
+                // a temporary file, deleted on exit anyway
+            }
+            arena = null;
+        }
+    }
+
+    public static String getStats() {
+        if (cache == null) {
+            return "Classes: " + classes.size() + " parsed";
+        }
+        return "Classes: " + parsed.size() + " parsed, "
+               + cache.getEvictions() + " evictions, " + reparses
+               + " re-parses, " + arena.size() + " bytes in the arena";
     }
 }
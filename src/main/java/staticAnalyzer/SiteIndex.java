@@ -0,0 +1,159 @@
+package staticAnalyzer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+// Array access sites (array loads, stores and ARRAYLENGTH) of the classes
+// to analyze. A method that has no site, and doesn't call an analyzable
+// method that reaches one, can't produce a report. Nothing is scanned up
+// front: a method is followed through its callees when the analysis first
+// asks about it, so the analysis starts on the first class while the
+// others are loading. The classes are known by the facts the Repository
+// took when it parsed them, so the index never parses a class again. It
+// is shared by the analysis threads.
+class SiteIndex {
+
+    private Analyzer analyzer;
+    // the classes to analyze, whose sites are counted
+    private List<String> class_names;
+    // Methods are kept by signature, not by MethodNode, which is a new
+    // one if the class is parsed again.
+    // methods known to reach a site through their analyzable callees, or not
+    private ConcurrentHashMap<MethodSignature,Boolean> reaching =
+            new ConcurrentHashMap<MethodSignature,Boolean>();
+    // sites already interpreted
+    private ConcurrentHashMap<MethodSignature,BitSet> visited =
+            new ConcurrentHashMap<MethodSignature,BitSet>();
+    private AtomicInteger analyzed = new AtomicInteger();
+    // methods not analyzed, each counted once however often it is met
+    private Set<MethodSignature> skipped = ConcurrentHashMap.newKeySet();
+
+    public SiteIndex( Analyzer analyzer, Collection<String> class_names ) {
+        this.analyzer = analyzer;
+        this.class_names = new ArrayList<String>(class_names);
+    }
+
+    // method run by the call, as Analysis looks it up
+    private MethodSignature resolve( MethodSignature call ) {
+        String owner = call.getOwner();
+        while( owner != null ) {
+            ClassFacts f = Repository.getFacts(owner);
+            if ( f == null )
+                return null;
+            ClassFacts.Method m = f.getMethod(call.getName(),call.getDesc());
+            if ( m != null && (m.getAccess() & Opcodes.ACC_ABSTRACT) == 0 ) {
+                return new MethodSignature(owner,call.getName(),call.getDesc());
+            }
+            owner = f.getSuperName();
+        }
+        return null;
+    }
+
+    // True if m has a site, or calls an analyzable method that reaches one
+    // (or that can't be found: the call will fail anyway). Its callees are
+    // searched until a site turns up; if none does, none of the methods
+    // searched reaches one either.
+    private boolean reaches( MethodSignature m ) {
+        Boolean known = reaching.get(m);
+        if ( known != null )
+            return known;
+        Set<MethodSignature> seen = new HashSet<MethodSignature>();
+        Deque<MethodSignature> work = new ArrayDeque<MethodSignature>();
+        seen.add(m);
+        work.push(m);
+        boolean found = false;
+        while( ! found && ! work.isEmpty() ) {
+            MethodSignature ms = work.pop();
+            known = reaching.get(ms);
+            if ( known != null ) {
+                found = known;
+                continue;
+            }
+            ClassFacts f = Repository.getFacts(ms.getOwner());
+            ClassFacts.Method method = f != null
+                    ? f.getMethod(ms.getName(),ms.getDesc()) : null;
+            if ( method == null || method.getSites() > 0 ) {
+                found = true;
+                continue;
+            }
+            for( MethodSignature call : method.getCalls() ) {
+                if ( ! analyzer.isAnalyzable(call.getOwner()) )
+                    continue;
+                MethodSignature callee = resolve(call);
+                if ( callee == null ) {
+                    found = true;
+                    break;
+                }
+                if ( seen.add(callee) )
+                    work.push(callee);
+            }
+        }
+        if ( found ) {
+            reaching.put(m,Boolean.TRUE);
+        } else {
+            for( MethodSignature ms : seen )
+                reaching.put(ms,Boolean.FALSE);
+        }
+        return found;
+    }
+
+    // False if analyzing m alone can't give anything: it reaches no site,
+    // and its result doesn't matter to the callers, which analyze it on
+    // their own when needed.
+    public boolean needsAnalysis( ClassNode j, MethodNode m ) {
+        if ( reaches(new MethodSignature(m,j)) )
+            return true;
+        int sort = Type.getReturnType(m.desc).getSort();
+        return sort != Type.VOID && sort != Type.OBJECT && sort != Type.ARRAY;
+    }
+
+    // m is not analyzed, as needsAnalysis allows
+    public void skip( ClassNode j, MethodNode m ) {
+        skipped.add(new MethodSignature(m,j));
+    }
+
+    // the site at index of m has been interpreted
+    public void visit( ClassNode j, MethodNode m, int index ) {
+        MethodSignature ms = new MethodSignature(m,j);
+        BitSet b = visited.get(ms);
+        if ( b == null ) {
+            BitSet old = visited.putIfAbsent(ms,b = new BitSet());
+            if ( old != null ) b = old;
+        }
+        synchronized( b ) {
+            if ( b.get(index) )
+                return;
+            b.set(index);
+        }
+        analyzed.incrementAndGet();
+    }
+
+    // the sites of the classes to analyze, scanned by now
+    public int getTotalSites() {
+        int total = 0;
+        for( String name : class_names ) {
+            ClassFacts f = Repository.getFacts(name);
+            if ( f != null )
+                total += f.getSites();
+        }
+        return total;
+    }
+
+    public int getAnalyzedSites() {
+        return analyzed.get();
+    }
+
+    public int getSkippedMethods() {
+        return skipped.size();
+    }
+
+    public String toString() {
+        return "Sites analyzed: "+analyzed+" / "+getTotalSites()
+               +", methods skipped: "+skipped.size();
+    }
+}
@@ -3,23 +3,32 @@ package staticAnalyzer;
 import java.util.*;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
-import java.io.*;
-
-class State implements Cloneable, Serializable {
-    // stack of the data
-    private Stack<Variable> stack = new Stack<Variable>();
-    
-    // local variables, constants, fields, static fields
-    private Vector<Variable> variables     = new Vector<Variable>();
-    
+
+class State implements Cloneable {
+    // stack of the data, sized from the method's maxStack
+    private Variable[] stack;
+    private int top = 0;
+
+    // local variables, sized from the method's maxLocals
+    private Variable[] variables;
+    private int locals = 0;
+
     private int pc = 0;
     private int jump = -1;
 
     private Variable result = null;
 
-    private State() {}
+    // records the changes while a branch is explored in place, not copied
+    // by clone
+    private Trail trail = null;
+
+    private State( int maxLocals, int maxStack ) {
+        variables = new Variable[Math.max(maxLocals,1)];
+        stack     = new Variable[Math.max(maxStack,1)];
+    }
 
     public State( MethodNode m, ClassNode j ) {
+        this(m.maxLocals,m.maxStack);
         assert m != null;
         assert j != null;
 
@@ -27,9 +36,9 @@ class State implements Cloneable, Serializable {
         boolean isStatic = (m.access & Opcodes.ACC_STATIC) != 0;
 
         if ( ! isStatic ) {
-            variables.add(0,new Variable("L"+j.name+";"
-                                        ,Variable.Kind.LOCAL
-                                        ,Variable.DomainValue.TOP,0,0));
+            store(0,new Variable("L"+j.name+";"
+                                ,Variable.Kind.LOCAL
+                                ,Variable.DomainValue.TOP,0,0));
         }
     }
 
@@ -50,85 +59,162 @@ class State implements Cloneable, Serializable {
     public int getJump() {
         return jump;
     }
-    
-    /* Stack functions */ 
+
+    protected void setTrail( Trail trail ) {
+        this.trail = trail;
+    }
+
+    public Trail getTrail() {
+        return trail;
+    }
+
+    /* Stack functions */
     public void stackPush(Variable v) {
-        stack.add(v);
+        if ( top == stack.length ) {
+            stack = Arrays.copyOf(stack,stack.length*2);
+        }
+        if ( trail != null ) trail.stack(this,top,top,stack[top]);
+        stack[top++] = v;
     }
 
     public Variable stackPeek() {
-        assert stack.size() > 0;
-        return stack.peek();
+        assert top > 0;
+        return stack[top-1];
     }
 
     public Variable stackPop() {
-        assert stack.size() > 0;
-        return stack.pop();
+        assert top > 0;
+        if ( trail != null ) trail.stack(this,top-1,top,stack[top-1]);
+        Variable v = stack[--top];
+        stack[top] = null;
+        return v;
+    }
+
+    // variable at the stack slot, 0 is the bottom
+    protected Variable getStack( int index ) {
+        return stack[index];
     }
 
     public int stackSize() {
-        return stack.size();
+        return top;
     }
 
     public void clearStack() {
-        stack.clear();
+        if ( trail != null ) {
+            while( top > 0 ) stackPop();
+        }
+        Arrays.fill(stack,0,top,null);
+        top = 0;
+    }
+
+    public int variablesSize() {
+        return locals;
     }
 
-    protected Vector<Variable> getVariables() {
-        return variables;
+    private void ensureLocals( int size ) {
+        if ( size > variables.length ) {
+            variables = Arrays.copyOf(variables
+                                     ,Math.max(size,variables.length*2));
+        }
     }
 
+    // copies the frame without serialization. Variables shared between
+    // slots (a load pushes the same object that is in the local) stay
+    // shared in the copy.
     public State clone() {
-        State s = SerialClone.clone(this);
+        Map<Object,Object> copies = new IdentityHashMap<Object,Object>();
+        State s = new State(variables.length,stack.length);
+        for( int i = 0; i < top; i++ ) {
+            s.stack[i] = stack[i].copy(copies);
+        }
+        s.top = top;
+        for( int i = 0; i < locals; i++ ) {
+            s.variables[i] = variables[i].copy(copies);
+        }
+        s.locals = locals;
+        s.pc = pc;
         s.jump = -1;
+        if ( result != null ) {
+            s.result = result.copy(copies);
+        }
         return s;
     }
 
     // returns false if fixpoint not found
     public boolean intersect( State a ) {
-        //System.out.println("intersect "+this.hashCode()+" with "+a.hashCode());
-        // System.out.println(a.stack.size()+" "+stack.size());
-
         // Sometimes stack sizes might mismatch if something went wrong, but for valid bytecode it should match
-        // assert a.stack.size() == stack.size();
-        
+        // assert a.top == top;
+
         boolean changed = false;
 
         if( pc < a.pc ) {
             pc = a.pc;
         }
 
-        int len = Math.min(stack.size(), a.stack.size());
+        int len = Math.min(top, a.top);
+        for( int i = 0; i < len; i++ ) {
+            if ( stack[i].intersect(a.stack[i],this) )
+                changed = true;
+        }
+
+        int varLen = Math.min(locals, a.locals);
+        for( int i = 0; i < varLen; i++ ) {
+            if ( variables[i].intersect(a.variables[i],this) )
+                changed = true;
+        }
+        return changed;
+    }
+
+    // as intersect, widening the variables that change
+    protected boolean widen( State a, WideningPolicy.Kind kind ) {
+        boolean changed = false;
+
+        if( pc < a.pc ) {
+            pc = a.pc;
+        }
 
+        int len = Math.min(top, a.top);
         for( int i = 0; i < len; i++ ) {
-            Variable v = stack.get(i);
-            Variable va = a.stack.get(i);
-            if ( v.intersect(va,this) ) 
+            if ( stack[i].widen(a.stack[i],kind) )
                 changed = true;
-            stack.set(i,v); 
         }
 
-        int varLen = Math.min(variables.size(), a.variables.size());
+        int varLen = Math.min(locals, a.locals);
         for( int i = 0; i < varLen; i++ ) {
-            Variable v = variables.get(i);
-            Variable va = a.variables.get(i);
-            if ( v.intersect(va,this) ) 
+            if ( variables[i].widen(a.variables[i],kind) )
                 changed = true;
-            variables.set(i,v);
         }
         return changed;
     }
 
+    // nothing is known anymore
+    protected void top() {
+        for( int i = 0; i < top; i++ ) {
+            stack[i].top();
+        }
+        for( int i = 0; i < locals; i++ ) {
+            variables[i].top();
+        }
+    }
+
     public Variable load( int index ) {
-        // Ensure vector is big enough.
-        if(index >= variables.size()) {
-             for(int k=variables.size(); k<=index; k++) {
-                 variables.add(new Variable("V", Variable.Kind.LOCAL, Variable.DomainValue.TOP, k, 0));
-             }
+        // Ensure the locals are big enough.
+        if ( index >= locals ) {
+            ensureLocals(index+1);
+            for( int k = locals; k <= index; k++ ) {
+                if ( trail != null ) trail.local(this,k,locals,variables[k]);
+                variables[k] = new Variable("V", Variable.Kind.LOCAL, Variable.DomainValue.TOP, k, 0);
+            }
+            locals = index+1;
         }
-        return variables.get(index);
+        return variables[index];
     }
-    
+
+    // variable in the local slot, without filling the missing ones
+    protected Variable getLocal( int index ) {
+        return variables[index];
+    }
+
     public Variable load( Variable arrayref, Variable index ) {
         // load an element from a vector
         // arrayref.getType() should return signature, e.g. "[I" or "[Ljava/lang/String;"
@@ -144,19 +230,86 @@ class State implements Cloneable, Serializable {
     }
 
     public void store( int index, Variable v ) {
-        if ( index >= variables.size() ) {
-            for(int k=variables.size(); k<=index; k++) {
-                variables.add(new Variable("V", Variable.Kind.LOCAL, Variable.DomainValue.TOP, k, 0));
-            }
+        if ( index >= locals ) {
+            load(index);
+        }
+        if ( trail != null ) trail.local(this,index,locals,variables[index]);
+        variables[index] = v;
+
+        // the bounds were about the array previously in the slot
+        for( int i = 0; i < locals; i++ ) {
+            variables[i].forget(index);
+        }
+        for( int i = 0; i < top; i++ ) {
+            stack[i].forget(index);
+        }
+    }
+
+    // local slot holding v, -1 if it is not a local
+    public int slotOf( Variable v ) {
+        int i = v.getIndex();
+        if ( i >= 0 && i < locals && variables[i] == v )
+            return i;
+        return -1;
+    }
+
+    // slot to now holds the same value of slot from
+    protected void alias( int from, int to ) {
+        for( int i = 0; i < locals; i++ ) {
+            variables[i].alias(from,to);
+        }
+        for( int i = 0; i < top; i++ ) {
+            stack[i].alias(from,to);
         }
-        variables.set(index,v);
     }
-    
+
     public void store( Variable arrayref, Variable index, Variable value ) {
         // No analysis on array content
     }
 
 
+    // undo of the trail
+    protected void restoreLocal( int index, int locals, Variable old ) {
+        variables[index] = old;
+        this.locals = locals;
+    }
+
+    protected void restoreStack( int index, int top, Variable old ) {
+        stack[index] = old;
+        this.top = top;
+    }
+
+    // join with a frame explored in place and rolled back: f is what it
+    // changed, base what the other side changed from the same start
+    protected boolean intersect( Trail.Delta f, Trail.Delta base ) {
+        boolean changed = false;
+
+        if( pc < f.getPC() ) {
+            pc = f.getPC();
+        }
+
+        // the values of f first, the join may change variables it shares
+        int len = Math.min(top, f.getTop());
+        int varLen = Math.min(locals, f.getLocals());
+        AbstractValue[] fs = new AbstractValue[len+varLen];
+        for( int i = 0; i < len; i++ ) {
+            fs[i] = f.valueAt(false,i,stack[i],base);
+        }
+        for( int i = 0; i < varLen; i++ ) {
+            fs[len+i] = f.valueAt(true,i,variables[i],base);
+        }
+
+        for( int i = 0; i < len; i++ ) {
+            if ( stack[i].intersect(fs[i]) )
+                changed = true;
+        }
+        for( int i = 0; i < varLen; i++ ) {
+            if ( variables[i].intersect(fs[len+i]) )
+                changed = true;
+        }
+        return changed;
+    }
+
     protected void setReturn( Variable v ) {
         result = v;
     }
@@ -167,8 +320,8 @@ class State implements Cloneable, Serializable {
 
     public String toString() {
         return "State "+hashCode()+": pc "+pc+", jump "+jump+"\n"+
-               "  variables:"+variables+"\n"+
-               "  stack:"+stack;
+               "  variables:"+Arrays.asList(variables).subList(0,locals)+"\n"+
+               "  stack:"+Arrays.asList(stack).subList(0,top);
     }
-    
+
 }
@@ -0,0 +1,133 @@
+package staticAnalyzer;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Return values of the analyzed methods, shared by the analysis threads.
+// A method is analyzed once: the first thread to ask claims it, and the
+// others wait for its future instead of analyzing it again. A thread
+// doesn't wait for a method it is analyzing itself (a recursive call) or
+// when the owner is waiting, maybe through other threads, for it: then it
+// analyzes the method on its own and the result is not shared.
+class SummaryCache {
+
+    // a summary computed, or being computed, by owner
+    static class Entry {
+        private final Thread owner = Thread.currentThread();
+        private final CompletableFuture<Variable> future =
+                new CompletableFuture<Variable>();
+    }
+
+    private ConcurrentHashMap<MethodSignature,Entry> entries =
+            new ConcurrentHashMap<MethodSignature,Entry>();
+    // entry every waiting thread is waiting for (guarded by this)
+    private Map<Thread,Entry> waiting = new HashMap<Thread,Entry>();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong waits = new AtomicLong();
+
+    // The entry of ms if this call claimed it, and so has to complete it;
+    // null if it was already claimed.
+    public Entry claim( MethodSignature ms ) {
+        if ( entries.get(ms) != null )
+            return null;
+        Entry e = new Entry();
+        if ( entries.putIfAbsent(ms,e) != null )
+            return null;
+        misses.incrementAndGet();
+        return e;
+    }
+
+    // The summary of ms, after waiting for it if another thread is
+    // computing it; null if the caller has to compute it itself.
+    public Variable lookup( MethodSignature ms ) {
+        Entry e = entries.get(ms);
+        if ( e == null )
+            return null;
+        if ( e.future.isDone() ) {
+            hits.incrementAndGet();
+            return e.future.join();
+        }
+        if ( ! startWaiting(e) )
+            return null;
+        waits.incrementAndGet();
+        try {
+            return e.future.join();
+        } finally {
+            stopWaiting();
+        }
+    }
+
+    // Publishes the summary of the claimed entry, or drops the entry if
+    // the analysis failed (ret is null).
+    public void complete( MethodSignature ms, Entry e, Variable ret ) {
+        if ( ret != null ) {
+            e.future.complete(ret.clone());
+        } else {
+            entries.remove(ms,e);
+            e.future.completeExceptionally(
+                    new IllegalStateException("Analysis of "+ms+" failed"));
+        }
+    }
+
+    // Adds a summary computed before, by a previous run.
+    public void put( MethodSignature ms, Variable ret ) {
+        Entry e = new Entry();
+        e.future.complete(ret);
+        entries.put(ms,e);
+    }
+
+    // Drops the summary of ms, to compute it again: only when no other
+    // thread is analyzing.
+    public void remove( MethodSignature ms ) {
+        entries.remove(ms);
+    }
+
+    // the summaries computed so far
+    public Map<MethodSignature,Variable> getCompleted() {
+        Map<MethodSignature,Variable> done = new HashMap<MethodSignature,Variable>();
+        for( Map.Entry<MethodSignature,Entry> e : entries.entrySet() ) {
+            CompletableFuture<Variable> f = e.getValue().future;
+            if ( f.isDone() && ! f.isCompletedExceptionally() )
+                done.put(e.getKey(),f.join());
+        }
+        return done;
+    }
+
+    // False if waiting for e would close a cycle of waiting threads.
+    private synchronized boolean startWaiting( Entry e ) {
+        Thread self = Thread.currentThread();
+        int n = waiting.size();
+        for( Entry w = e; w != null && n >= 0; w = waiting.get(w.owner), n-- ) {
+            if ( w.owner == self )
+                return false;
+            if ( w.future.isDone() )
+                break;
+        }
+        waiting.put(self,e);
+        return true;
+    }
+
+    private synchronized void stopWaiting() {
+        waiting.remove(Thread.currentThread());
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public String toString() {
+        return "Summaries: "+hits+" hits, "+misses+" misses, "+waits+" waits";
+    }
+}
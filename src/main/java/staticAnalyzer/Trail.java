@@ -0,0 +1,185 @@
+package staticAnalyzer;
+
+import java.util.*;
+
+// Undo log of the changes to a State and to the values of its Variables.
+// A branch is explored on the state itself and rolled back undoing the
+// log down to a mark, so that what is saved depends on what the branch
+// changes and not on the size of the frame.
+class Trail {
+
+    // trail of the method being analyzed by this thread, if any
+    private static final ThreadLocal<Trail> current = new ThreadLocal<Trail>();
+    // set before each analysis: without trails, current() doesn't look up
+    // the thread local
+    private static volatile boolean used = false;
+
+    private static final byte VALUE = 0; // Variable value
+    private static final byte LOCAL = 1; // local slot and count
+    private static final byte STACK = 2; // stack slot and height
+
+    private byte[] kinds = new byte[64];
+    private Object[] targets = new Object[64];
+    private Object[] olds = new Object[64];
+    private int[] indices = new int[64];
+    private int[] counts = new int[64];
+    private int size = 0;
+
+    // the trail recording the changes of this thread, null if none
+    public static Trail current() {
+        return used ? current.get() : null;
+    }
+
+    // whether the analysis about to start uses trails
+    public static void use( boolean trails ) {
+        used = trails;
+    }
+
+    // makes t the trail of this thread, returns the previous one
+    public static Trail install( Trail t ) {
+        Trail old = current.get();
+        current.set(t);
+        return old;
+    }
+
+    private void add( byte kind, Object target, int index, int count
+                    , Object old ) {
+        if ( size == kinds.length ) {
+            int n = size*2;
+            kinds = Arrays.copyOf(kinds,n);
+            targets = Arrays.copyOf(targets,n);
+            olds = Arrays.copyOf(olds,n);
+            indices = Arrays.copyOf(indices,n);
+            counts = Arrays.copyOf(counts,n);
+        }
+        kinds[size] = kind;
+        targets[size] = target;
+        indices[size] = index;
+        counts[size] = count;
+        olds[size] = old;
+        size++;
+    }
+
+    protected void value( Variable v, AbstractValue old ) {
+        add(VALUE,v,0,0,old);
+    }
+
+    protected void local( State s, int index, int locals, Variable old ) {
+        add(LOCAL,s,index,locals,old);
+    }
+
+    protected void stack( State s, int index, int top, Variable old ) {
+        add(STACK,s,index,top,old);
+    }
+
+    public int mark() {
+        return size;
+    }
+
+    // rolls back every change after mark
+    public void undo( int mark ) {
+        while( size > mark ) {
+            size--;
+            if ( kinds[size] == VALUE ) {
+                ((Variable)targets[size]).restore((AbstractValue)olds[size]);
+            } else if ( kinds[size] == LOCAL ) {
+                ((State)targets[size]).restoreLocal(indices[size],counts[size]
+                                                   ,(Variable)olds[size]);
+            } else {
+                ((State)targets[size]).restoreStack(indices[size],counts[size]
+                                                   ,(Variable)olds[size]);
+            }
+            targets[size] = null;
+            olds[size] = null;
+        }
+    }
+
+    // A frame described by its differences from another one: the slots
+    // and the variable values that changed.
+    static class Delta {
+        private Map<Integer,Variable> locals = new HashMap<Integer,Variable>();
+        private Map<Integer,Variable> stack = new HashMap<Integer,Variable>();
+        private Map<Variable,AbstractValue> values =
+                new IdentityHashMap<Variable,AbstractValue>();
+        private int nlocals;
+        private int top;
+        private int pc;
+        private int jump;
+
+        public int getPC() {
+            return pc;
+        }
+
+        public int getJump() {
+            return jump;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getLocals() {
+            return nlocals;
+        }
+
+        // value of the variable at the stack slot, or in the local slot
+        protected AbstractValue valueAt( boolean local, int index
+                                       , Variable current, Delta base ) {
+            Map<Integer,Variable> slots = local ? locals : stack;
+            Variable v = slots.get(index);
+            if ( v == null && base != null ) {
+                v = (local ? base.locals : base.stack).get(index);
+            }
+            if ( v == null ) {
+                v = current;
+            }
+            AbstractValue a = values.get(v);
+            if ( a == null && base != null ) {
+                a = base.values.get(v);
+            }
+            return a != null ? a : v.getValue();
+        }
+    }
+
+    // the frame s has reached since mark, to be joined after the undo
+    public Delta capture( int mark, State s ) {
+        Delta d = new Delta();
+        for( int i = mark; i < size; i++ ) {
+            if ( kinds[i] == VALUE ) {
+                Variable v = (Variable)targets[i];
+                d.values.put(v,v.getValue());
+            } else if ( targets[i] == s ) {
+                int index = indices[i];
+                if ( kinds[i] == LOCAL ) {
+                    d.locals.put(index,index < s.variablesSize()
+                                      ? s.getLocal(index) : null);
+                } else {
+                    d.stack.put(index,index < s.stackSize()
+                                     ? s.getStack(index) : null);
+                }
+            }
+        }
+        d.nlocals = s.variablesSize();
+        d.top = s.stackSize();
+        d.pc = s.getPC();
+        d.jump = s.getJump();
+        return d;
+    }
+
+    // the frame s had at mark, as far as it changed since
+    public Delta base( int mark, State s ) {
+        Delta d = new Delta();
+        for( int i = size-1; i >= mark; i-- ) {
+            if ( kinds[i] == VALUE ) {
+                d.values.put((Variable)targets[i],(AbstractValue)olds[i]);
+            } else if ( targets[i] == s ) {
+                if ( kinds[i] == LOCAL ) {
+                    d.locals.put(indices[i],(Variable)olds[i]);
+                } else {
+                    d.stack.put(indices[i],(Variable)olds[i]);
+                }
+            }
+        }
+        return d;
+    }
+}
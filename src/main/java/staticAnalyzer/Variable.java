@@ -1,14 +1,15 @@
 package staticAnalyzer;
 
 import java.util.*;
-import java.io.*;
 
-class Variable implements Serializable, Cloneable {
-    private String type; // java type signature as defined here
+class Variable implements Cloneable {
+    // type (java type signature as defined here), kind, domain value and
+    // bounds, shared with every variable that knows the same.
     // http://java.sun.com/j2se/1.5.0/docs/guide/jni/spec/types.html
-
-    private List<Variable> safe = null;
-    private List<Variable> edge = null;
+    //
+    // bounds are local slots: safe means < length of the array in that
+    // slot, edge means <= length.
+    private AbstractValue val;
 
     // value in the abstract domain
     public enum DomainValue {BOTTOM, G0, GEQ0, TOP;
@@ -27,7 +28,6 @@ class Variable implements Serializable, Cloneable {
                 }
             }
         }; 
-    private DomainValue value; 
 
     /* At the moment analysis of static and non static fields are
      * avoided. they are always considered as TOP.
@@ -36,7 +36,6 @@ class Variable implements Serializable, Cloneable {
      * Protected requires a package and subclass wide analysis, public
      * is impossibile (if not in an application driver analysis) */ 
     public enum Kind {LOCAL,STATIC,FIELD,CONST};
-    private Kind kind;
 
     private int startpc;
     private int index;
@@ -50,51 +49,60 @@ class Variable implements Serializable, Cloneable {
                    , int index, int startpc ) {
         assert type.length() > 0;
 
-        this.type = type;
-        this.kind = kind;
-        this.value = value;
+        this.val = AbstractValue.of(type,kind,value,null,null);
+        this.index = index;
+        this.startpc = startpc;
+    }
+
+    protected Variable( AbstractValue val, int index, int startpc ) {
+        this.val = val;
         this.index = index;
         this.startpc = startpc;
     }
 
     public DomainValue getDomainValue() {
-        return value;
+        return val.getValue();
     }
 
     protected void setDomainValue( DomainValue value ) {
-        this.value = value;
+        set(val.withValue(value));
     }
 
     public String getType() {
-        return type;
+        return val.getType();
     }
 
     protected void setType( String type ) {
-        this.type = type;
+        set(val.withType(type));
     }
 
     public boolean isLocal() {
-        return kind == Kind.LOCAL;
+        return val.getKind() == Kind.LOCAL;
     }
 
     public boolean isField() {
-        return kind == Kind.FIELD;
+        return val.getKind() == Kind.FIELD;
     }
 
     public boolean isStatic() {
-        return kind == Kind.STATIC;
+        return val.getKind() == Kind.STATIC;
     }
 
     public boolean isConst() {
-        return kind == Kind.CONST;
+        return val.getKind() == Kind.CONST;
     }
 
     public Kind getKind() {
-        return kind;
+        return val.getKind();
     }
 
     protected void setKind( Kind kind ) {
-        this.kind = kind;
+        set(val.withKind(kind));
+    }
+
+    // the interned value, equal values are the same object
+    protected AbstractValue getValue() {
+        return val;
     }
 
     public int getStartPC() {
@@ -113,97 +121,152 @@ class Variable implements Serializable, Cloneable {
         this.index = index;
     }
     
+    // a variable that is not in a local slot can't be named again, so no
+    // bound on it is kept.
+    private static boolean hasSlot( Variable a ) {
+        return a.index >= 0 && a.index != Integer.MAX_VALUE;
+    }
+
+    private void setBounds( BoundSet safe, BoundSet edge ) {
+        set(val.withBounds(safe,edge));
+    }
+
+    // every change of the value goes through here to be undone if a
+    // branch is being explored in place
+    private void set( AbstractValue v ) {
+        if ( v == val )
+            return;
+        Trail t = Trail.current();
+        if ( t != null ) t.value(this,val);
+        val = v;
+    }
+
+    // undo of the trail
+    protected void restore( AbstractValue v ) {
+        val = v;
+    }
+
     public void addSafe( Variable a ) {
-        if (safe == null) {
-            safe = new LinkedList<Variable>();
-        }
-        if ( ! safe.contains(a) ) {
-            //System.out.println("adding "+a+" as safe to "+this);
-            safe.add(a);
-        }
+        if ( ! hasSlot(a) )
+            return;
+        setBounds(BoundSet.with(val.getSafe(),a.index),val.getEdge());
     }
 
     public void addEdge( Variable a ) {
-        if (edge == null) {
-            edge = new LinkedList<Variable>();
-        }
-        if ( ! edge.contains(a) ) {
-            edge.add(a);
-        }
+        if ( ! hasSlot(a) )
+            return;
+        setBounds(val.getSafe(),BoundSet.with(val.getEdge(),a.index));
+    }
+
+    private void addSafe( BoundSet b ) {
+        setBounds(BoundSet.union(val.getSafe(),b),val.getEdge());
+    }
+
+    private void addEdge( BoundSet b ) {
+        setBounds(val.getSafe(),BoundSet.union(val.getEdge(),b));
     }
 
     public boolean isSafe( Variable a ) {
-        // System.out.println("testing if "+a+" is safe for "+this);
-        if (safe == null || value == DomainValue.BOTTOM 
-                || value == DomainValue.TOP )
+        DomainValue value = val.getValue();
+        if ( value == DomainValue.BOTTOM 
+                || value == DomainValue.TOP || ! hasSlot(a) )
             return false;
-        return safe.contains(a);
+        return BoundSet.contains(val.getSafe(),a.index);
     }
 
     public boolean isEdge( Variable a ) {
-        if (edge == null || value == DomainValue.BOTTOM
-                || value == DomainValue.TOP )
+        DomainValue value = val.getValue();
+        if ( value == DomainValue.BOTTOM
+                || value == DomainValue.TOP || ! hasSlot(a) )
             return false;
-        return edge.contains(a);
+        return BoundSet.contains(val.getEdge(),a.index);
+    }
+
+    // the local slot has been overwritten, bounds on it are no more valid
+    protected void forget( int slot ) {
+        setBounds(BoundSet.without(val.getSafe(),slot)
+                 ,BoundSet.without(val.getEdge(),slot));
+    }
+
+    // slot to is a copy of slot from, bounds on from hold on it too
+    protected void alias( int from, int to ) {
+        BoundSet safe = val.getSafe();
+        BoundSet edge = val.getEdge();
+        if ( BoundSet.contains(safe,from) ) safe = BoundSet.with(safe,to);
+        if ( BoundSet.contains(edge,from) ) edge = BoundSet.with(edge,to);
+        setBounds(safe,edge);
+    }
+
+    // moves the bounds to the slots of another frame (map[slot] < 0 drops)
+    protected void remapBounds( int[] map ) {
+        setBounds(BoundSet.remap(val.getSafe(),map)
+                 ,BoundSet.remap(val.getEdge(),map));
     }
-   
+
     public boolean intersect( Variable v, State s ) {
+        return intersect(v.val);
+    }
+
+    protected boolean intersect( AbstractValue v ) {
+        // same value, nothing to join
+        if ( val == v )
+            return false;
+
         boolean changed = false;
-        Iterator a,b;
+        BoundSet safe = val.getSafe();
+        BoundSet edge = val.getEdge();
+        DomainValue value = val.getValue();
 
-        // scorrere le liste di safe e tenere quelli in comune
-        if ( safe == null || v.safe == null ) {
+        // tenere i safe in comune
+        if ( safe == null || v.getSafe() == null ) {
             safe = null;
         } else {
-            a = safe.iterator();
-            while( a.hasNext() ) {
-                Variable va = (Variable)a.next();
-                boolean found = false;
-                b = v.safe.iterator();
-                while( b.hasNext() ) {
-                    Variable vb = (Variable)b.next();
-                    if( va.index == vb.index ) {
-                         found = true;  
-                    }
-                }
-                if ( found == false ) {
-                   a.remove();
-                   changed = true;
-                }
+            BoundSet b = BoundSet.intersection(safe,v.getSafe());
+            if ( b != safe ) {
+                safe = b;
+                changed = true;
             }
         }
-        
-        // scorrere le liste di edge e tenere quelli in comune
-        if ( edge == null || v.edge == null ) {
+
+        // tenere gli edge in comune
+        if ( edge == null || v.getEdge() == null ) {
             edge = null;
         } else {
-            a = edge.iterator();
-            while( a.hasNext() ) {
-                Variable va = (Variable)a.next();
-                boolean found = false;
-                b = v.edge.iterator();
-                while( b.hasNext() ) {
-                    Variable vb = (Variable)b.next();
-                    if( va.index == vb.index ) {
-                         found = true;  
-                    }
-                }
-                if ( ! found ) {
-                   a.remove();
-                   changed = true;
-                }
+            BoundSet b = BoundSet.intersection(edge,v.getEdge());
+            if ( b != edge ) {
+                edge = b;
+                changed = true;
             }
         }
         
         // if value < v.value
-        if ( ! value.geq(v.value) ) {
-            value = v.value;
+        if ( ! value.geq(v.getValue()) ) {
+            value = v.getValue();
             changed = true;
         }
+        set(val.withBounds(safe,edge).withValue(value));
         return changed;
     }
 
+    // join that can't go on forever: if the join changes the variable its
+    // bounds are dropped, and with Kind.TOP its value too.
+    protected boolean widen( Variable v, WideningPolicy.Kind kind ) {
+        boolean changed = intersect(v,null);
+        if ( changed ) {
+            cleanBounds();
+            if ( kind == WideningPolicy.Kind.TOP ) {
+                setDomainValue(DomainValue.TOP);
+            }
+        }
+        return changed;
+    }
+
+    protected void top() {
+        set(val.withBounds(null,null).withValue(DomainValue.TOP));
+    }
+
     public int getCategory() {
+        String type = val.getType();
         if ( type.equals("D") || type.equals("J") ) {
             return 2;
         } else {
@@ -214,50 +277,32 @@ class Variable implements Serializable, Cloneable {
     // this < v
     public void cmplt( Variable v ) {
         // add all safe from v to this
-        if ( v.safe != null ) {
-           for( Variable s : v.safe ) {
-               addSafe(s);
-           }
-        } 
-
+        addSafe(v.val.getSafe());
         // add all edge from v to this as safe
-        if ( v.edge != null ) {
-           for( Variable s : v.edge ) {
-               addSafe(s);
-           }
-        }
+        addSafe(v.val.getEdge());
     }
 
     // this <= v
     public void cmple( Variable v ) {
         // add all safe from v to this
-        if ( v.safe != null ) {
-           for( Variable s : v.safe ) {
-               addSafe(s);
-           }
-        } 
-
+        addSafe(v.val.getSafe());
         // add all edge from v to this 
-        if ( v.edge != null ) {
-           for( Variable s : v.edge ) {
-               addEdge(s);
-           }
-        }
+        addEdge(v.val.getEdge());
     }
 
     // this > v
     public void cmpgt( Variable v ) {
-        if (v.value == DomainValue.GEQ0) {
-            value = DomainValue.G0;
+        if (v.getDomainValue() == DomainValue.GEQ0) {
+            setDomainValue(DomainValue.G0);
         }
     }
 
     // this >= v
     public void cmpge( Variable v ) {
-        if (v.value == DomainValue.GEQ0) {
-            value = DomainValue.GEQ0;
-        } else if (v.value == DomainValue.G0) {
-            value = DomainValue.G0;
+        if (v.getDomainValue() == DomainValue.GEQ0) {
+            setDomainValue(DomainValue.GEQ0);
+        } else if (v.getDomainValue() == DomainValue.G0) {
+            setDomainValue(DomainValue.G0);
         }
     }
 
@@ -272,40 +317,38 @@ class Variable implements Serializable, Cloneable {
     // this += n
     public void iinc( int n ) {
         assert n != 0;
+        DomainValue value = val.getValue();
         if ( n == 1 ) {
-            edge = safe;
-            safe = null;
+            setBounds(null,val.getSafe());
             if(value == DomainValue.GEQ0) {
-                value = DomainValue.G0;
+                setDomainValue(DomainValue.G0);
             }
         } else if ( n == -1 ) {
-            edge = null;
-            safe = edge;
+            setBounds(null,null);
             if(value == DomainValue.G0) {
-                value = DomainValue.GEQ0;
+                setDomainValue(DomainValue.GEQ0);
             }
         } else if ( n > 1 ) {
-            edge = null;
-            safe = null;
+            setBounds(null,null);
             if (value == DomainValue.GEQ0) {
-                value = DomainValue.G0;
+                setDomainValue(DomainValue.G0);
             }
         } else {
             assert n < -1;
-            edge = null;
-            safe = null;
-            value = DomainValue.TOP;
+            set(val.withBounds(null,null).withValue(DomainValue.TOP));
         }
     }
 
     public Variable add( Variable v ) {
-        if (value == DomainValue.GEQ0 && v.value == DomainValue.GEQ0) {
-            return new Variable(type,Kind.LOCAL,DomainValue.GEQ0
+        DomainValue value = getDomainValue();
+        DomainValue other = v.getDomainValue();
+        if (value == DomainValue.GEQ0 && other == DomainValue.GEQ0) {
+            return new Variable(getType(),Kind.LOCAL,DomainValue.GEQ0
                     ,Integer.MAX_VALUE,0);
         }
-        if ( (v.value == DomainValue.G0 || v.value == DomainValue.GEQ0)
-          && (value   == DomainValue.G0 || value   == DomainValue.GEQ0)) {
-            return new Variable(type,Kind.LOCAL,DomainValue.G0
+        if ( (other == DomainValue.G0 || other == DomainValue.GEQ0)
+          && (value == DomainValue.G0 || value == DomainValue.GEQ0)) {
+            return new Variable(getType(),Kind.LOCAL,DomainValue.G0
                     ,Integer.MAX_VALUE,0);
         }
         return newLocal();
@@ -319,22 +362,13 @@ class Variable implements Serializable, Cloneable {
         } else {
             dv = DomainValue.GEQ0;
         }
-        Variable r = new Variable(v.type,Kind.LOCAL,dv
+        Variable r = new Variable(v.getType(),Kind.LOCAL,dv
                 ,Integer.MAX_VALUE,0);
 
         if (dv != DomainValue.TOP) {
             // this / v <= this (assuming non-negative this and v >= 1)
             // propagate safe and edge from this
-            if (safe != null) {
-                for (Variable s : safe) {
-                    r.addSafe(s);
-                }
-            }
-            if (edge != null) {
-                for (Variable s : edge) {
-                    r.addEdge(s);
-                }
-            }
+            r.setBounds(val.getSafe(),val.getEdge());
         }
         return r;
     }
@@ -347,7 +381,7 @@ class Variable implements Serializable, Cloneable {
         } else {
             dv = DomainValue.GEQ0;
         }
-        Variable r = new Variable(v.type,Kind.LOCAL,dv
+        Variable r = new Variable(v.getType(),Kind.LOCAL,dv
                 ,Integer.MAX_VALUE,0);
 
         if (dv != DomainValue.TOP) {
@@ -355,52 +389,38 @@ class Variable implements Serializable, Cloneable {
             r.addSafe(v);
 
             // r < v implies r inherits v's bounds
-            if (v.safe != null) {
-                for (Variable s : v.safe) {
-                    r.addSafe(s);
-                }
-            }
-            if (v.edge != null) {
-                for (Variable s : v.edge) {
-                    r.addSafe(s); // edge becomes safe because r < v <= s
-                }
-            }
+            r.addSafe(v.val.getSafe());
+            r.addSafe(v.val.getEdge()); // edge becomes safe because r < v <= s
 
             // r <= this implies r inherits this's bounds
-            if (safe != null) {
-                for (Variable s : safe) {
-                    r.addSafe(s);
-                }
-            }
-            if (edge != null) {
-                for (Variable s : edge) {
-                    r.addEdge(s);
-                }
-            }
+            r.addSafe(val.getSafe());
+            r.addEdge(val.getEdge());
         }
         return r;
     }
 
     public Variable mul( Variable v ) {
-        if (value == DomainValue.GEQ0 && v.value == DomainValue.GEQ0) {
-            return new Variable(type,Kind.LOCAL,DomainValue.GEQ0
+        DomainValue value = getDomainValue();
+        DomainValue other = v.getDomainValue();
+        if (value == DomainValue.GEQ0 && other == DomainValue.GEQ0) {
+            return new Variable(getType(),Kind.LOCAL,DomainValue.GEQ0
                     ,Integer.MAX_VALUE,0);
         }
-        if ( (v.value == DomainValue.G0 && v.value == DomainValue.GEQ0)
-          && (value   == DomainValue.G0 && value   == DomainValue.GEQ0)) {
-            return new Variable(type,Kind.LOCAL,DomainValue.G0
+        if ( (other == DomainValue.G0 && other == DomainValue.GEQ0)
+          && (value == DomainValue.G0 && value == DomainValue.GEQ0)) {
+            return new Variable(getType(),Kind.LOCAL,DomainValue.G0
                     ,Integer.MAX_VALUE,0);
         }
         return newLocal();
     }
 
     public Variable ushr( Variable v ) {
-        return new Variable(type,Kind.LOCAL,DomainValue.GEQ0
+        return new Variable(getType(),Kind.LOCAL,DomainValue.GEQ0
                 ,Integer.MAX_VALUE,0);
     }
 
     public Variable shr( Variable v ) {
-        return new Variable(type,Kind.LOCAL,DomainValue.GEQ0
+        return new Variable(getType(),Kind.LOCAL,DomainValue.GEQ0
                 ,Integer.MAX_VALUE,0);
     }
 
@@ -411,52 +431,79 @@ class Variable implements Serializable, Cloneable {
     public Variable xor( Variable v )   { return newLocal(); }
 
     public Variable and( Variable v ) {
-        if( (v.value == DomainValue.G0 || v.value == DomainValue.GEQ0)
+        DomainValue value = getDomainValue();
+        DomainValue other = v.getDomainValue();
+        if( (other == DomainValue.G0 || other == DomainValue.GEQ0)
             && (value == DomainValue.G0 || value == DomainValue.GEQ0))  {
-            Variable a = new Variable(type,Kind.LOCAL
+            Variable a = new Variable(getType(),Kind.LOCAL
                         ,DomainValue.GEQ0,Integer.MAX_VALUE,0);
-            for ( Variable s : safe   ) a.addSafe(s);
-            for ( Variable s : v.safe ) a.addSafe(s);
-            for ( Variable s : edge   ) a.addEdge(s);
-            for ( Variable s : v.edge ) a.addEdge(s);
+            a.addSafe(val.getSafe());
+            a.addSafe(v.val.getSafe());
+            a.addEdge(val.getEdge());
+            a.addEdge(v.val.getEdge());
         }
         return newLocal(); 
     }
 
     private final Variable newLocal() {
-        return new Variable(type,Kind.LOCAL,DomainValue.TOP
+        return new Variable(getType(),Kind.LOCAL,DomainValue.TOP
                 ,Integer.MAX_VALUE,0);
     }
 
     public String toString() {
-        String s = "Variable "+hashCode()+": value "+value+", kind "+kind+
+        String s = "Variable "+hashCode()+": value "+val.getValue()
+               +", kind "+val.getKind()+
                ", index: " +index+", "+
                "safe:";
         
-        if ( safe != null ) {
-            for( Variable v : safe ) {
-                s += " "+v.hashCode();
-            }
+        if ( val.getSafe() != null ) {
+            s += val.getSafe();
         }
-        s += ", edge: ";
-        if ( edge != null ) {
-            for( Variable v : edge ) {
-                s +=" "+v.hashCode();
-            }
+        s += ", edge:";
+        if ( val.getEdge() != null ) {
+            s += val.getEdge();
         }
         return s;
     }
 
+    // the value is immutable, so a clone only has its own identity
     public Variable clone() {
-        Variable v = new Variable(type,kind,value,index,startpc); 
-        v.safe = safe;
-        v.edge = edge;
+        return new Variable(val,index,startpc);
+    }
+
+    // a clone of another type, or without bounds: the value is built before
+    // the wrapper, not changed on it
+    protected Variable cloneAs( String type ) {
+        return new Variable(val.withType(type),index,startpc);
+    }
+
+    protected Variable cloneUnbounded() {
+        return new Variable(val.withBounds(null,null),index,startpc);
+    }
+
+    // copy of a frame: the same variable reached twice is copied once so
+    // that the aliasing of the original is kept.
+    protected Variable copy( Map<Object,Object> copies ) {
+        Variable v = (Variable)copies.get(this);
+        if ( v == null ) {
+            v = new Variable(val,index,startpc);
+            copies.put(this,v);
+        }
         return v;
     }
 
+    // copies a list of arguments sharing the aliasing between them
+    protected static Vector<Variable> copyAll( Vector<Variable> vs ) {
+        Map<Object,Object> copies = new IdentityHashMap<Object,Object>();
+        Vector<Variable> c = new Vector<Variable>(vs.size());
+        for( Variable v : vs ) {
+            c.add(v.copy(copies));
+        }
+        return c;
+    }
+
     public void cleanBounds() {
-        safe = null;
-        edge = null;
+        setBounds(null,null);
     }
 
 }
@@ -0,0 +1,204 @@
+package staticAnalyzer;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Analyzes the classes under some directories, and again every time their
+// class files change, printing the reports added and removed. The events
+// are collected until none comes for a while, so a build writing many
+// files is analyzed once. The Repository stays loaded from a run to the
+// next, and with the analyzer's cache only the methods the changes affect
+// are analyzed again.
+public class Watcher {
+
+    private Analyzer analyzer;
+    private PackageFilter filter;
+    private WatchService service;
+    // directory watched by every key, and the directory it is under
+    private Map<WatchKey,Path> dirs = new HashMap<WatchKey,Path>();
+    private Map<WatchKey,Path> roots = new HashMap<WatchKey,Path>();
+    // class of every class file seen
+    private Map<Path,String> files = new HashMap<Path,String>();
+    private TreeSet<String> class_names = new TreeSet<String>();
+    private long quiet = 300;
+
+    public Watcher( Analyzer analyzer, PackageFilter filter ) throws IOException {
+        this.analyzer = analyzer;
+        this.filter = filter;
+        service = FileSystems.getDefault().newWatchService();
+    }
+
+    // milliseconds without events before the classes are analyzed again
+    public void setQuiet( long quiet ) {
+        this.quiet = quiet;
+    }
+
+    // Watches the class files under root, already added to the Repository.
+    public void watch( Path root ) throws IOException {
+        root = root.toAbsolutePath();
+        register(root,root);
+        for( Path p : list(root) ) {
+            String name = name(root,p);
+            if ( name != null )
+                files.put(p,name);
+        }
+    }
+
+    // Analyzes the classes, and then again after every change; it returns
+    // only if interrupted or if nothing is left to watch.
+    public void run( Collection<String> class_names )
+            throws ClassNotFoundException, IOException {
+        this.class_names.addAll(class_names);
+        analyzer.analyzeClasses(new Vector<String>(this.class_names));
+        TreeSet<BadArrayAccess> last =
+                new TreeSet<BadArrayAccess>(analyzer.getReports());
+        try {
+            while( ! dirs.isEmpty() ) {
+                Set<Path> changed = new LinkedHashSet<Path>();
+                WatchKey key = service.take();
+                while( key != null ) {
+                    collect(key,changed);
+                    key = service.poll(quiet,TimeUnit.MILLISECONDS);
+                }
+                if ( ! update(changed) )
+                    continue;
+                analyzer.reset();
+                analyzer.analyzeClasses(new Vector<String>(this.class_names));
+                TreeSet<BadArrayAccess> now =
+                        new TreeSet<BadArrayAccess>(analyzer.getReports());
+                printDelta(last,now);
+                last = now;
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } finally {
+            service.close();
+        }
+    }
+
+    // the class files the events of key are about
+    private void collect( WatchKey key, Set<Path> changed ) throws IOException {
+        Path dir = dirs.get(key);
+        Path root = roots.get(key);
+        for( WatchEvent<?> event : key.pollEvents() ) {
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                // events lost: every class file could have changed
+                changed.addAll(files.keySet());
+                changed.addAll(list(root));
+                continue;
+            }
+            Path p = dir.resolve((Path)event.context());
+            if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(p) ) {
+                register(root,p);
+                changed.addAll(list(p));
+            } else if ( name(root,p) != null ) {
+                changed.add(p);
+            } else if ( event.kind() == StandardWatchEventKinds.ENTRY_DELETE ) {
+                // a directory: its class files went with it
+                for( Path f : files.keySet() ) {
+                    if ( f.startsWith(p) )
+                        changed.add(f);
+                }
+            }
+        }
+        if ( ! key.reset() ) {
+            dirs.remove(key);
+            roots.remove(key);
+        }
+    }
+
+    // Puts the class files changed in the Repository in place of the old
+    // ones, and drops the ones deleted; false if none was.
+    private boolean update( Set<Path> changed ) {
+        boolean any = false;
+        for( Path p : changed ) {
+            String old = files.remove(p);
+            if ( old != null ) {
+                Repository.removeClass(old);
+                class_names.remove(old);
+                any = true;
+            }
+            if ( ! Files.isRegularFile(p) )
+                continue;
+            try {
+                String name = Repository.addClass(Files.readAllBytes(p));
+                files.put(p,name);
+                if ( filter.accepts(name) )
+                    class_names.add(name);
+                any = true;
+            } catch ( IOException e ) {
+                System.err.println("Can't read "+p+": "+e.getMessage());
+            } catch ( RuntimeException e ) {
+                // still being written: the next event brings it
+                System.err.println("Can't read "+p+": "+e);
+            }
+        }
+        return any;
+    }
+
+    private void printDelta( Set<BadArrayAccess> last, Set<BadArrayAccess> now ) {
+        int added = 0;
+        int removed = 0;
+        for( BadArrayAccess ba : now ) {
+            if ( ! last.contains(ba) ) {
+                System.out.println("+ "+ba);
+                added++;
+            }
+        }
+        for( BadArrayAccess ba : last ) {
+            if ( ! now.contains(ba) ) {
+                System.out.println("- "+ba);
+                removed++;
+            }
+        }
+        System.out.println("Reports: "+added+" added, "+removed+" removed");
+    }
+
+    private void register( Path root, Path dir ) throws IOException {
+        Stream<Path> s = Files.walk(dir);
+        try {
+            for( Iterator<Path> i = s.iterator(); i.hasNext(); ) {
+                Path d = i.next();
+                if ( ! Files.isDirectory(d) )
+                    continue;
+                WatchKey key = d.register(service
+                                         ,StandardWatchEventKinds.ENTRY_CREATE
+                                         ,StandardWatchEventKinds.ENTRY_DELETE
+                                         ,StandardWatchEventKinds.ENTRY_MODIFY);
+                dirs.put(key,d);
+                roots.put(key,root);
+            }
+        } finally {
+            s.close();
+        }
+    }
+
+    // the class files under dir
+    private static List<Path> list( Path dir ) throws IOException {
+        List<Path> found = new ArrayList<Path>();
+        Stream<Path> s = Files.walk(dir);
+        try {
+            for( Iterator<Path> i = s.iterator(); i.hasNext(); ) {
+                Path p = i.next();
+                if ( p.toString().endsWith(".class") && Files.isRegularFile(p) )
+                    found.add(p);
+            }
+        } finally {
+            s.close();
+        }
+        return found;
+    }
+
+    // the class of a class file under root, null if it is not one
+    private static String name( Path root, Path p ) {
+        String s = root.relativize(p).toString()
+                   .replace(root.getFileSystem().getSeparator(),"/");
+        if ( ! s.endsWith(".class") || s.startsWith("META-INF/") )
+            return null;
+        return s.substring(0,s.length()-".class".length());
+    }
+}
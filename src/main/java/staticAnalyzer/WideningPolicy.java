@@ -0,0 +1,87 @@
+package staticAnalyzer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Decides how the fixpoint loops join the result of a new iteration: a
+// plain join for the first iterations, then a widening, and after the
+// iteration limit everything goes to TOP so that every loop terminates.
+public class WideningPolicy {
+
+    // what is dropped when widening a variable that is still changing
+    public enum Kind {NONE, BOUNDS, TOP};
+
+    private Kind kind = Kind.BOUNDS;
+    private int threshold = 10; // iterations joined without widening
+    private int limit = 100;    // iterations before going to TOP
+    private AtomicLong widenings = new AtomicLong();
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public void setKind( Kind kind ) {
+        this.kind = kind;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold( int threshold ) {
+        if ( threshold < 0 )
+            throw new IllegalArgumentException("Negative widening threshold");
+        this.threshold = threshold;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit( int limit ) {
+        if ( limit < 1 )
+            throw new IllegalArgumentException("Iteration limit must be positive");
+        this.limit = limit;
+    }
+
+    // number of times a widening (or the limit) changed a state
+    public long getWidenings() {
+        return widenings.get();
+    }
+
+    // joins the state reached by the given iteration into s, returns true
+    // if another iteration is needed
+    protected boolean join( State s, State next, int iteration ) {
+        if ( iteration == limit ) {
+            // one more iteration so that it is analyzed with TOP
+            s.top();
+            widenings.incrementAndGet();
+            return true;
+        }
+        if ( iteration > threshold && iteration < limit
+                && kind != Kind.NONE ) {
+            if ( s.widen(next,kind) ) {
+                widenings.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        return s.intersect(next);
+    }
+
+    // same as above for the value returned by a recursive method
+    protected boolean join( Variable v, Variable next, int iteration ) {
+        if ( iteration >= limit ) {
+            v.top();
+            widenings.incrementAndGet();
+            return false;
+        }
+        if ( iteration > threshold && kind != Kind.NONE ) {
+            if ( v.widen(next,kind) ) {
+                widenings.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        return v.intersect(next,null);
+    }
+}
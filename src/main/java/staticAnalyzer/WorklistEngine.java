@@ -0,0 +1,122 @@
+package staticAnalyzer;
+
+import java.util.*;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+// Fixpoint over the basic blocks of a method. One joined State is kept at
+// the entry of every block, and a block is analyzed again only when its
+// entry state changes. Unlike Analysis.analyzeInstructions the depth of
+// the java stack doesn't depend on how the branches are nested.
+class WorklistEngine {
+
+    private Analysis analysis;
+
+    public WorklistEngine( Analysis analysis ) {
+        this.analysis = analysis;
+    }
+
+    // returns the join of the values returned by the method
+    public Variable analyze( MethodNode m, ClassNode j, State entry ) {
+        InsnList il = m.instructions;
+        MethodTransfer transfer = analysis.getTransfer(m);
+        ControlFlowGraph cfg = transfer.getGraph();
+        State[] in = new State[cfg.size()];
+        int[] joins = new int[cfg.size()]; // times the entry state changed
+        BitSet worklist = new BitSet(cfg.size());
+        Variable ret = null;
+
+        in[0] = entry;
+        worklist.set(0);
+        while( ! worklist.isEmpty() ) {
+            // lowest block first, it follows the layout of the code
+            int id = worklist.nextSetBit(0);
+            worklist.clear(id);
+
+            ControlFlowGraph.BasicBlock b = cfg.getBlock(id);
+            State s = in[id].clone();
+            transfer.applyBlock(id,analysis,m,j,s);
+
+            int pci = b.getEnd();
+            AbstractInsnNode node = il.get(pci);
+            int opcode = node.getOpcode();
+            s.setPC(pci);
+
+            if ( (opcode >= Opcodes.IFEQ && opcode <= Opcodes.IF_ACMPNE)
+                    || opcode == Opcodes.IFNULL
+                    || opcode == Opcodes.IFNONNULL ) {
+                State false_branch = s.clone();
+                analysis.branch(opcode,s,false_branch);
+                if ( pci+1 < il.size() ) {
+                    merge(in,joins,worklist,cfg.blockAt(pci+1),false_branch);
+                }
+                merge(in,joins,worklist
+                     ,cfg.blockAt(il.indexOf(((JumpInsnNode)node).label)),s);
+            } else if ( opcode == Opcodes.GOTO ) {
+                merge(in,joins,worklist
+                     ,cfg.blockAt(il.indexOf(((JumpInsnNode)node).label)),s);
+            } else if ( opcode == Opcodes.TABLESWITCH
+                     || opcode == Opcodes.LOOKUPSWITCH ) {
+                s.stackPop(); // key
+                for( int succ : b.getSuccessors() ) {
+                    merge(in,joins,worklist,cfg.getBlock(succ),s.clone());
+                }
+            } else if ( opcode == Opcodes.ATHROW ) {
+                Variable ex = s.stackPop();
+                int handler = analysis.findHandler(m,il,pci,ex);
+                if ( handler >= 0 ) {
+                    s.clearStack();
+                    s.stackPush(ex);
+                    merge(in,joins,worklist,cfg.blockAt(handler),s);
+                }
+            } else if ( opcode >= Opcodes.IRETURN
+                     && opcode <= Opcodes.RETURN ) {
+                Variable v;
+                if ( s.stackSize() > 0 ) {
+                    v = s.stackPop();
+                } else {
+                    v = new Variable("V"
+                                    ,Variable.Kind.LOCAL
+                                    ,Variable.DomainValue.TOP
+                                    ,Integer.MAX_VALUE,pci);
+                }
+                if ( ret == null ) {
+                    ret = v;
+                } else {
+                    ret.intersect(v,s);
+                }
+            } else if ( opcode == Opcodes.JSR || opcode == Opcodes.RET ) {
+                // subroutines are not supported
+            } else {
+                // already applied with the block
+                for( int succ : b.getSuccessors() ) {
+                    merge(in,joins,worklist,cfg.getBlock(succ),s);
+                }
+            }
+        }
+
+        if ( ret == null ) {
+            // the method never returns
+            ret = new Variable(Type.getReturnType(m.desc).getDescriptor()
+                              ,Variable.Kind.LOCAL
+                              ,Variable.DomainValue.TOP
+                              ,Integer.MAX_VALUE,0);
+        }
+        return ret;
+    }
+
+    // joins s into the entry state of b, queues b if that changed. The
+    // widening policy bounds how many times an entry state can change.
+    private void merge( State[] in, int[] joins, BitSet worklist
+                      , ControlFlowGraph.BasicBlock b, State s ) {
+        int id = b.getId();
+        if ( in[id] == null ) {
+            in[id] = s;
+            worklist.set(id);
+        } else if ( analysis.getWidening().join(in[id],s,joins[id]+1) ) {
+            joins[id]++;
+            worklist.set(id);
+        }
+    }
+}
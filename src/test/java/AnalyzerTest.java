@@ -2,17 +2,34 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import javax.tools.JavaCompiler;
 import javax.tools.ToolProvider;
+import staticAnalyzer.ClassSource;
+import staticAnalyzer.JarSource;
+import staticAnalyzer.JdkSource;
+import staticAnalyzer.Repository;
 
 public class AnalyzerTest {
 
@@ -21,6 +38,529 @@ public class AnalyzerTest {
 
     @Test
     public void testAllSamples() throws Exception {
+        for (Path javaFile : samples()) {
+            System.out.println("Testing " + javaFile.getFileName());
+            compileAndRun(javaFile);
+        }
+    }
+
+    @Test
+    public void testAllSamplesWorklist() throws Exception {
+        assertSameReports("--worklist");
+    }
+
+    @Test
+    public void testAllSamplesTrail() throws Exception {
+        assertSameReports("--trail");
+    }
+
+    @Test
+    public void testAllSamplesBottomUp() throws Exception {
+        assertSameReports("--bottom-up");
+        assertSameReports("--bottom-up", "--threads=2");
+        assertSameReports("--bottom-up", "--threads=4");
+    }
+
+    @Test
+    public void testAllSamplesClassBudget() throws Exception {
+        assertSameReports("--class-budget=1", "--threads=2");
+    }
+
+    @Test
+    public void testClassBudgetEvictsAndParsesAgain() throws Exception {
+        List<String> classFiles = new ArrayList<>();
+        for (Path javaFile : samples()) {
+            classFiles.add(compile(javaFile).toString());
+        }
+        int classes = classFiles.size();
+        String dir = tempDir.toString();
+        List<String> expected = run(classFiles.toArray(new String[0]));
+        for (String input : new String[] {null, dir}) {
+            for (String threads : new String[] {"--threads=1", "--threads=2"}) {
+                // room for every class: each parsed once
+                long[] stats = budgetStats(expected, input, classFiles, threads, "--class-budget=1024");
+                assertEquals(classes, stats[0], "parsed");
+                assertEquals(0, stats[1], "evictions");
+                assertEquals(0, stats[2], "re-parses");
+                // only the class files added are kept in the arena, the
+                // classes of a directory are read from it again
+                assertEquals(input == null, stats[3] > 0, "bytes in the arena " + stats[3]);
+                // room for one class at a time: each class pushes the one
+                // before out. The sites are found as the analysis gets to a
+                // class, so in order none is parsed again; the tasks of the
+                // methods of a class, on more threads, may be
+                stats = budgetStats(expected, input, classFiles, threads, "--class-budget=1");
+                assertEquals(classes, stats[0], "parsed");
+                if (threads.equals("--threads=1")) {
+                    assertTrue(stats[1] > 0 && stats[1] < classes, "evictions " + stats[1]);
+                    assertEquals(0, stats[2], "re-parses");
+                } else {
+                    assertTrue(stats[1] >= classes - 1, "evictions " + stats[1]);
+                }
+            }
+        }
+    }
+
+    // Runs the classes in dir, or the class files if it is null, checking
+    // the reports; returns the classes parsed, evicted and parsed again,
+    // and the bytes in the arena.
+    private long[] budgetStats(List<String> expected, String dir, List<String> classFiles,
+            String... flags) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList(flags));
+        if (dir != null) {
+            args.add(dir);
+        } else {
+            args.addAll(classFiles);
+        }
+        String output = output(args.toArray(new String[0]));
+        assertEquals(expected, reports(output), String.join(" ", args));
+        Matcher m = Pattern.compile("Classes: (\\d+) parsed, (\\d+) evictions, (\\d+) re-parses"
+                + ", (\\d+) bytes in the arena").matcher(output);
+        assertTrue(m.find(), output);
+        return new long[] {Long.parseLong(m.group(1)), Long.parseLong(m.group(2)),
+                Long.parseLong(m.group(3)), Long.parseLong(m.group(4))};
+    }
+
+    @Test
+    public void testAllSamplesCache() throws Exception {
+        String cache = "--cache=" + tempDir.resolve("cache");
+        for (Path javaFile : samples()) {
+            System.out.println("Testing " + javaFile.getFileName());
+            List<String> expected = compileAndRun(javaFile);
+            String classFile = compile(javaFile).toString();
+            String first = output(cache, classFile);
+            assertTrue(first.contains("Cache: 0 classes reused, 1 changed"), first);
+            assertEquals(expected, reports(first), javaFile.getFileName().toString());
+            // the second run replays the results saved by the first
+            String second = output(cache, classFile);
+            assertTrue(second.contains("Cache: 1 classes reused, 0 changed"), second);
+            assertEquals(expected, reports(second), javaFile.getFileName().toString());
+        }
+    }
+
+    @Test
+    public void testAllSamplesCheckpoint() throws Exception {
+        String checkpoint = "--checkpoint=" + tempDir.resolve("checkpoint");
+        for (Path javaFile : samples()) {
+            System.out.println("Testing " + javaFile.getFileName());
+            List<String> expected = compileAndRun(javaFile);
+            String classFile = compile(javaFile).toString();
+            String first = output(checkpoint, classFile);
+            assertTrue(first.contains("Checkpoint: 1 classes done, 0 reports resumed"), first);
+            assertEquals(expected, reports(first), javaFile.getFileName().toString());
+            // the second run resumes with every class done
+            String second = output(checkpoint, "--resume", classFile);
+            assertTrue(second.contains("Checkpoint: 1 classes done, " + expected.size()
+                    + " reports resumed"), second);
+            assertEquals(expected, reports(second), javaFile.getFileName().toString());
+        }
+    }
+
+    @Test
+    public void testCheckpointResumesWithTheClassesLeft() throws Exception {
+        String checkpoint = "--checkpoint=" + tempDir.resolve("checkpoint");
+        String done = compile(Paths.get("src/test/resources/test-inputs/test27.java")).toString();
+        String left = compile(Paths.get("src/test/resources/test-inputs/test4.java")).toString();
+        List<String> expected = run(done, left);
+        assertEquals(Arrays.asList("test27.java:14 in b"), run(checkpoint, done));
+        // as if the run had stopped after test27
+        String resumed = output(checkpoint, "--resume", done, left);
+        assertTrue(resumed.contains("Checkpoint: 2 classes done, 1 reports resumed"), resumed);
+        assertEquals(expected, reports(resumed));
+    }
+
+    @Test
+    public void testSameReportsForAnyThreadCount() throws Exception {
+        for (int threads = 2; threads <= 8; threads *= 2) {
+            assertSameReports("--threads=" + threads);
+        }
+    }
+
+    @Test
+    public void testSameReportsInParallelWithEveryEngine() throws Exception {
+        assertSameReports("--threads=4", "--worklist");
+        assertSameReports("--threads=4", "--trail");
+        assertSameReports("--threads=4", "--no-slicing");
+    }
+
+    @Test
+    public void testSameReportsLongestFirst() throws Exception {
+        String profile = "--profile=" + tempDir.resolve("profile");
+        for (Path javaFile : samples()) {
+            System.out.println("Testing " + javaFile.getFileName());
+            List<String> expected = compileAndRun(javaFile);
+            // the first run records the times the others are ordered by
+            assertEquals(expected, compileAndRun(javaFile, profile, "--threads=2"));
+            for (int threads = 2; threads <= 8; threads++) {
+                assertEquals(expected, compileAndRun(javaFile, profile, "--threads=" + threads),
+                        javaFile.getFileName() + " with " + threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    public void testCalleeReportedWhateverTheCaller() throws Exception {
+        // a() only passes safe indexes to b(), and is analyzed first
+        Path javaFile = Paths.get("src/test/resources/test-inputs/test27.java");
+        for (String threads : new String[] {"--threads=1", "--threads=2", "--threads=4"}) {
+            assertEquals(Arrays.asList("test27.java:14 in b"),
+                    compileAndRun(javaFile, threads), threads);
+        }
+    }
+
+    @Test
+    public void testCallUsesTheArguments() throws Exception {
+        // id(3) is not negative only if id() is analyzed with its argument
+        Path javaFile = Paths.get("src/test/resources/test-inputs/test28.java");
+        String[][] modes = {{"--threads=1"}, {"--threads=4"}, {"--bottom-up"},
+                {"--worklist"}, {"--trail"}};
+        for (String[] mode : modes) {
+            assertEquals(Collections.emptyList(), compileAndRun(javaFile, mode), mode[0]);
+        }
+    }
+
+    @Test
+    public void testCacheOnlyReusedWithSameSettings() throws Exception {
+        String cache = "--cache=" + tempDir.resolve("cache");
+        String classFile = compile(Paths.get("src/test/resources/test-inputs/test27.java")).toString();
+        List<String> expected = Arrays.asList("test27.java:14 in b");
+        assertTrue(output(cache, classFile).contains("Cache: 0 classes reused"));
+        String again = output(cache, classFile);
+        assertTrue(again.contains("Cache: 1 classes reused"), again);
+        assertEquals(expected, reports(again));
+        String[][] modes = {{"--worklist"}, {"--trail"}, {"--no-slicing"},
+                {"--bottom-up"}, {"--widening=top"}};
+        for (String[] mode : modes) {
+            List<String> args = new ArrayList<>(Arrays.asList(mode));
+            args.add(cache);
+            args.add(classFile);
+            String other = output(args.toArray(new String[0]));
+            assertTrue(other.contains("Cache: 0 classes reused"), mode[0] + ": " + other);
+            assertEquals(expected, reports(other), mode[0]);
+        }
+    }
+
+    @Test
+    public void testCacheAnalyzesTheCallersOfAChangedCallee() throws Exception {
+        // id() has the same summary on its own in both versions, only the
+        // result of the call in get() changes
+        String source = "package c;\nclass B {\n"
+                + "    static int get(int[] a) {\n"
+                + "        int k = A.id(3);\n"
+                + "        if (k < a.length)\n"
+                + "            return a[k];\n"
+                + "        return 0;\n"
+                + "    }\n}\n"
+                + "class A {\n    static int id(int x) { return x + 0; }\n}\n";
+        Path dir = tempDir.resolve("callee");
+        Files.createDirectories(dir.resolve("c"));
+        Path classes = compileClasses("c/B", source);
+        Files.copy(classes.resolve("c/B.class"), dir.resolve("c/B.class"));
+        Files.copy(classes.resolve("c/A.class"), dir.resolve("c/A.class"));
+        String cache = "--cache=" + tempDir.resolve("cache");
+        assertEquals(Collections.emptyList(), run(cache, dir.toString()));
+
+        classes = compileClasses("c/B", source.replace("x + 0", "x - 4"));
+        Files.copy(classes.resolve("c/A.class"), dir.resolve("c/A.class"),
+                StandardCopyOption.REPLACE_EXISTING);
+        String again = output(cache, dir.toString());
+        assertTrue(again.contains("Cache: 1 classes reused, 1 changed"), again);
+        assertEquals(Arrays.asList("B.java:6 in get"), reports(again));
+        assertEquals(reports(again), run(dir.toString()));
+    }
+
+    @Test
+    public void testSitesCountedOnce() throws Exception {
+        List<String> classFiles = new ArrayList<>();
+        for (Path javaFile : samples()) {
+            classFiles.add(compile(javaFile).toString());
+        }
+        String expected = null;
+        for (String threads : new String[] {"--threads=1", "--threads=4"}) {
+            List<String> args = new ArrayList<>(classFiles);
+            args.add(0, threads);
+            List<String> lines = new ArrayList<>();
+            for (String line : output(args.toArray(new String[0])).split("\\R")) {
+                if (line.startsWith("Sites analyzed")) {
+                    lines.add(line);
+                }
+            }
+            assertEquals(1, lines.size(), threads);
+            if (expected == null) {
+                expected = lines.get(0);
+            }
+            assertEquals(expected, lines.get(0), threads);
+        }
+    }
+
+    @Test
+    public void testJar() throws Exception {
+        Path test4 = sample("test4");
+        Path test27 = sample("test27");
+        List<String> expected = run(test4.toString(), test27.toString());
+        Path jar = tempDir.resolve("samples.jar");
+        writeZip(jar, new byte[0],
+                "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(),
+                "test/test4.class", Files.readAllBytes(test4),
+                "test/test27.class", Files.readAllBytes(test27),
+                "test/notes.txt", "not a class".getBytes());
+        assertEquals(expected, run(jar.toString()));
+        assertEquals(expected, run("--threads=2", jar.toString()));
+    }
+
+    @Test
+    public void testDirectory() throws Exception {
+        Path dir = tempDir.resolve("classes");
+        Files.createDirectories(dir.resolve("test/deep"));
+        Files.copy(sample("test4"), dir.resolve("test/test4.class"));
+        Files.copy(sample("test27"), dir.resolve("test/deep/test27.class"));
+        assertEquals(run(sample("test4").toString(), sample("test27").toString()),
+                run(dir.toString()));
+    }
+
+    @Test
+    public void testNestedJar() throws Exception {
+        Path inner = tempDir.resolve("inner.jar");
+        writeZip(inner, new byte[0], "test/test27.class", Files.readAllBytes(sample("test27")));
+        Path outer = tempDir.resolve("outer.jar");
+        writeZip(outer, new byte[0],
+                "test/test4.class", Files.readAllBytes(sample("test4")),
+                "BOOT-INF/lib/inner.jar", Files.readAllBytes(inner));
+        assertEquals(run(sample("test4").toString(), sample("test27").toString()),
+                run(outer.toString()));
+        // the file system of the jar inside is closed with the jar
+        JarSource jar = new JarSource(outer.toString());
+        ClassSource nested = jar.getNested().get(0);
+        assertNotNull(nested.read("test/test27"));
+        jar.close();
+        assertThrows(ClosedFileSystemException.class, () -> nested.read("test/test27"));
+    }
+
+    @Test
+    public void testSourcesClosedByClear() throws Exception {
+        Path jar = tempDir.resolve("closed.jar");
+        writeZip(jar, new byte[0], "test/test4.class", Files.readAllBytes(sample("test4")));
+        JarSource source = new JarSource(jar.toString());
+        Repository.clear();
+        Repository.addSource(source);
+        assertEquals("test/test4", Repository.lookupClass("test/test4").name);
+        Repository.clear();
+        assertThrows(IllegalStateException.class, () -> source.read("test/test4"));
+        assertNull(Repository.findClass("test/test4"));
+    }
+
+    @Test
+    public void testJmod() throws Exception {
+        Path jmod = tempDir.resolve("samples.jmod");
+        writeZip(jmod, new byte[] {'J', 'M', 1, 0},
+                "classes/module-info.class", new byte[0],
+                "classes/test/test4.class", Files.readAllBytes(sample("test4")),
+                "lib/libnative.so", new byte[1]);
+        assertEquals(run(sample("test4").toString()), run(jmod.toString()));
+    }
+
+    @Test
+    public void testMultiReleaseJar() throws Exception {
+        String safe = "package mr;\nclass Mr {\n"
+                + "    static int get(int[] a) { return a.length; }\n}\n";
+        String unsafe = "package mr;\nclass Mr {\n"
+                + "    static int get(int[] a, int i) { return a[i]; }\n}\n";
+        Path jar = tempDir.resolve("mr.jar");
+        writeZip(jar, new byte[0],
+                "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nMulti-Release: true\n".getBytes(),
+                "mr/Mr.class", compileSource("mr/Mr", safe),
+                "META-INF/versions/9/mr/Mr.class", compileSource("mr/Mr", unsafe));
+        assertEquals(Arrays.asList("Mr.java:3 in get"), run(jar.toString()));
+        assertEquals(Arrays.asList("Mr.java:3 in get"), run("--release=9", jar.toString()));
+        assertEquals(Collections.emptyList(), run("--release=8", jar.toString()));
+    }
+
+    @Test
+    public void testArgFile() throws Exception {
+        Path args = tempDir.resolve("args");
+        Files.write(args, Arrays.asList(
+                "# the samples",
+                "--threads=2  " + sample("test4"),
+                "",
+                "@" + tempDir.resolve("more")));
+        Files.write(tempDir.resolve("more"), Arrays.asList(sample("test27").toString()));
+        assertEquals(run(sample("test4").toString(), sample("test27").toString()),
+                run("@" + args));
+    }
+
+    @Test
+    public void testJdkClasses() throws Exception {
+        JdkSource jdk = JdkSource.running();
+        assertNotNull(jdk, "No jrt:/ file system");
+        assertTrue(jdk.getClassNames().isEmpty(), "The JDK has no classes to analyze");
+        byte[] string = jdk.read("java/lang/String");
+        assertNotNull(string);
+        assertEquals(0xCAFEBABE, ByteBuffer.wrap(string).getInt());
+        assertTrue(jdk.contains("java/util/logging/Logger"), "In another module");
+        // asked twice, answered from what was found the first time
+        for (int i = 0; i < 2; i++) {
+            assertTrue(jdk.contains("java/util/ArrayList"));
+            assertFalse(jdk.contains("java/lang/NoSuchClass"));
+            assertFalse(jdk.contains("test/test4"));
+            assertNull(jdk.read("java/lang/NoSuchClass"));
+        }
+        Repository.clear();
+        assertEquals("java/util/ArrayList", Repository.lookupClass("java/util/ArrayList").name);
+        assertNull(Repository.findClass("java/lang/NoSuchClass"));
+    }
+
+    @Test
+    public void testPackageFilter() throws Exception {
+        Path dir = tempDir.resolve("classes");
+        Files.createDirectories(dir.resolve("test"));
+        Files.createDirectories(dir.resolve("other/deep"));
+        Files.copy(sample("test4"), dir.resolve("test/test4.class"));
+        Files.write(dir.resolve("other/Other.class"), compileSource("other/Other",
+                "package other;\nclass Other {\n"
+                + "    static int get(int[] a, int i) { return a[i]; }\n}\n"));
+        Files.write(dir.resolve("other/deep/Deep.class"), compileSource("other/deep/Deep",
+                "package other.deep;\nclass Deep {\n"
+                + "    static int get(int[] a, int i) { return a[i]; }\n}\n"));
+        String test4 = "test4.java:6 in test, test4.java:8 in test";
+        String other = "Other.java:3 in get";
+        String deep = "Deep.java:3 in get";
+        assertFiltered(dir, deep + ", " + other + ", " + test4);
+        assertFiltered(dir, test4, "--exclude=other");
+        assertFiltered(dir, other, "--include=other", "--exclude=other.deep");
+        assertFiltered(dir, deep + ", " + other, "--include=other/**");
+        assertFiltered(dir, deep, "--include=**.Deep");
+        assertFiltered(dir, deep + ", " + test4, "--exclude=*.Other");
+    }
+
+    // The classes of dir the filter accepts give the reports expected, and
+    // the others are not even parsed.
+    private void assertFiltered(Path dir, String expected, String... filters) throws Exception {
+        List<String> args = new ArrayList<>(Arrays.asList(filters));
+        args.add("--class-budget=1024");
+        args.add(dir.toString());
+        String output = output(args.toArray(new String[0]));
+        List<String> reports = Arrays.asList(expected.split(", "));
+        assertEquals(reports, reports(output), String.join(" ", filters));
+        int classes = 0;
+        for (String name : new String[] {"test4", "Other", "Deep"}) {
+            if (expected.contains(name + ".java")) {
+                classes++;
+            }
+        }
+        assertTrue(output.contains("Classes: " + classes + " parsed"), output);
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        String safe = "package w;\nclass W {\n"
+                + "    static int get(int[] a) { return a.length; }\n}\n";
+        String unsafe = "package w;\nclass W {\n"
+                + "    static int get(int[] a, int i) { return a[i]; }\n}\n";
+        Path dir = tempDir.resolve("watched");
+        Files.createDirectories(dir.resolve("w"));
+        Path file = dir.resolve("w/W.class");
+        Files.write(file, compileSource("w/W", safe));
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread watch = new Thread(() -> {
+            try {
+                Repository.clear();
+                new App().run(new String[] {"--watch", dir.toString()});
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        try {
+            watch.start();
+            int at = awaitOutput(buffer, "No error found", 0);
+            // changed: the report comes
+            Files.write(file, compileSource("w/W", unsafe));
+            at = awaitOutput(buffer, "Reports: 1 added, 0 removed", at);
+            assertTrue(buffer.toString().contains("+ W.java:3 in get"), buffer.toString());
+            // a class added in a new package
+            Files.createDirectories(dir.resolve("v"));
+            Files.write(dir.resolve("v/V.class"), compileSource("v/V",
+                    unsafe.replace("package w", "package v").replace("class W", "class V")));
+            at = awaitOutput(buffer, "Reports: 1 added, 0 removed", at);
+            assertTrue(buffer.toString().contains("+ V.java:3 in get"), buffer.toString());
+            // fixed and deleted: the reports go
+            Files.write(file, compileSource("w/W", safe));
+            Files.delete(dir.resolve("v/V.class"));
+            at = awaitOutput(buffer, "Reports: 0 added, 2 removed", at);
+            assertTrue(buffer.toString().contains("- W.java:3 in get"), buffer.toString());
+            assertTrue(buffer.toString().contains("- V.java:3 in get"), buffer.toString());
+        } finally {
+            watch.interrupt();
+            watch.join(10000);
+            System.setOut(out);
+        }
+        assertFalse(watch.isAlive(), "Still watching after the interrupt");
+        assertNull(failure.get());
+    }
+
+    // Waits for text to be printed after from, and returns where it ends.
+    private static int awaitOutput(ByteArrayOutputStream buffer, String text, int from)
+            throws InterruptedException {
+        for (int i = 0; i < 600; i++) {
+            int at = buffer.toString().indexOf(text, from);
+            if (at >= 0) {
+                return at + text.length();
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Not printed: " + text + "\n" + buffer);
+    }
+
+    // every sample gives the reports of the sequential run with flags
+    private void assertSameReports(String... flags) throws Exception {
+        for (Path javaFile : samples()) {
+            System.out.println("Testing " + javaFile.getFileName());
+            assertEquals(compileAndRun(javaFile), compileAndRun(javaFile, flags),
+                    javaFile.getFileName() + " with " + String.join(" ", flags));
+        }
+    }
+
+    // the class file of a sample, by name
+    private Path sample(String name) throws IOException {
+        return compile(Paths.get("src/test/resources/test-inputs/" + name + ".java"));
+    }
+
+    // the class file of the class name compiled from source
+    private byte[] compileSource(String name, String source) throws IOException {
+        return Files.readAllBytes(compileClasses(name, source).resolve(name + ".class"));
+    }
+
+    // the directory with the class files of every class in the source of name
+    private Path compileClasses(String name, String source) throws IOException {
+        Path dir = Files.createTempDirectory(tempDir, "src");
+        Path file = dir.resolve(name + ".java");
+        Files.createDirectories(file.getParent());
+        Files.write(file, source.getBytes());
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-d", dir.toString(), file.toString()),
+                "Compilation failed for " + name);
+        return dir;
+    }
+
+    // Writes a zip with the entries given as name and content pairs, after
+    // header (a jmod starts with one).
+    private static void writeZip(Path zip, byte[] header, Object... entries) throws IOException {
+        try (OutputStream out = Files.newOutputStream(zip)) {
+            out.write(header);
+            ZipOutputStream zos = new ZipOutputStream(out);
+            for (int i = 0; i < entries.length; i += 2) {
+                zos.putNextEntry(new ZipEntry((String) entries[i]));
+                zos.write((byte[]) entries[i + 1]);
+                zos.closeEntry();
+            }
+            zos.finish();
+        }
+    }
+
+    private List<Path> samples() throws IOException {
         Path resourcesPath = Paths.get("src/test/resources/test-inputs");
         assertTrue(Files.exists(resourcesPath), "Resources path should exist");
 
@@ -32,14 +572,18 @@ public class AnalyzerTest {
         }
 
         assertFalse(javaFiles.isEmpty(), "Should find test files");
+        return javaFiles;
+    }
 
-        for (Path javaFile : javaFiles) {
-            System.out.println("Testing " + javaFile.getFileName());
-            compileAndRun(javaFile);
-        }
+    // the reports of the run, sorted
+    private List<String> compileAndRun(Path javaFile, String... flags) throws IOException, ClassNotFoundException {
+        List<String> args = new ArrayList<>(Arrays.asList(flags));
+        args.add(compile(javaFile).toAbsolutePath().toString());
+        return run(args.toArray(new String[0]));
     }
 
-    private void compileAndRun(Path javaFile) throws IOException, ClassNotFoundException {
+    // the class file of the sample
+    private Path compile(Path javaFile) throws IOException {
         // Compile
         JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
         int result = compiler.run(null, null, null,
@@ -66,9 +610,44 @@ public class AnalyzerTest {
         Path classFilePath = tempDir.resolve("test").resolve(className + ".class");
 
         assertTrue(Files.exists(classFilePath), "Class file not found: " + classFilePath);
+        return classFilePath;
+    }
+
+    // Runs App on a fresh Repository, and returns the reports it printed,
+    // sorted: only the parallel modes sort them.
+    private List<String> run(String... args) throws IOException, ClassNotFoundException {
+        return reports(output(args));
+    }
+
+    // what App printed
+    private String output(String... args) throws IOException, ClassNotFoundException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true));
+        try {
+            Repository.clear();
+            new App().run(args);
+        } finally {
+            System.setOut(out);
+        }
+        return buffer.toString();
+    }
 
-        // Run App
-        App app = new App();
-        app.run(new String[]{classFilePath.toAbsolutePath().toString()});
+    // the last reports printed, sorted
+    private List<String> reports(String output) {
+        String reports = null;
+        for (String line : output.split("\\R")) {
+            if (line.startsWith("[") || line.equals("No error found")) {
+                reports = line;
+            }
+        }
+        assertNotNull(reports, "No reports printed");
+        if (reports.startsWith("No error")) {
+            return Collections.emptyList();
+        }
+        List<String> sorted = new ArrayList<>(Arrays.asList(
+                reports.substring(1, reports.length() - 1).split(", ")));
+        Collections.sort(sorted);
+        return sorted;
     }
 }
@@ -0,0 +1,14 @@
+package test;
+
+class test24 {
+
+    public int test( long l, int x, int a[] ) {
+        if ( x >= 0 && x < a.length ) {
+            int b[] = a;
+            int c = b[x]; // safe
+            a = new int[1];
+            return c + a[x]; // not safe
+        }
+        return 0;
+    }
+}
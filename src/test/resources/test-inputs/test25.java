@@ -0,0 +1,17 @@
+package test;
+
+class test25 {
+    public int test( int a[], int b[] ) {
+        int c = 0;
+        for( int i = 0; i < a.length; i++ ) {
+            if ( i < b.length ) {
+                if ( a[i] > 0 ) { // safe
+                    c += b[i]; // safe
+                } else {
+                    c -= a[i]; // safe
+                }
+            }
+        }
+        return c;
+    }
+}
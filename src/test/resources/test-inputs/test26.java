@@ -0,0 +1,19 @@
+package test;
+
+class test26 {
+    private double total;
+    private String name = "";
+
+    // field arithmetic and string calls are outside the slice
+    public int test( int a[], int k ) {
+        double d = total * 2.5 + k;
+        total = d / 3;
+        name = name.trim();
+        int s = 0;
+        for( int i = 0; i < a.length; i++ ) {
+            s += a[i]; // safe
+        }
+        s += a[k * 2]; // not safe
+        return s + (int)d;
+    }
+}
@@ -0,0 +1,38 @@
+package test;
+
+class test27 {
+
+    // calls b only with safe indexes, and comes first
+    public static int a( int[] a ) {
+        int s = 0;
+        for( int i = 0; i < a.length; i++ )
+            s += b(a,i);
+        return s;
+    }
+
+    public static int b( int[] a, int i ) {
+        return a[i]; // not safe on its own
+    }
+
+    // long enough to be scheduled first
+    public static int big( int[] a, int x ) {
+        int s = 0;
+        for( int i = 0; i < a.length; i++ ) {
+            switch( x ) {
+            case 0: s += i; break;
+            case 1: s -= i; break;
+            case 2: s *= i; break;
+            case 3: s += 2 * i; break;
+            case 4: s ^= i; break;
+            case 5: s |= i; break;
+            case 6: s &= i; break;
+            default: s++;
+            }
+            if ( s > 100 )
+                s = 0;
+            x = x + s % 3;
+            s += a[i] > 0 ? 1 : 2;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,16 @@
+package test;
+
+class test28 {
+
+    static int id( int x ) {
+        return x;
+    }
+
+    // safe only if the call knows that the argument is not negative
+    public int test( int[] a ) {
+        int k = id(3);
+        if ( k < a.length )
+            return a[k];
+        return 0;
+    }
+}